@@ -0,0 +1,35 @@
+#!/bin/bash
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+RED='\033[0;31m'
+NC='\033[0m'
+
+# Usage: ./run-benchmarks.sh [include-regex] [threads] [backends]
+#   ./run-benchmarks.sh                              # everything, 1/8/64 threads, mock + local
+#   ./run-benchmarks.sh SlidingWindow 8 mock         # one algorithm, 8 threads, in-process Redis only
+INCLUDE=${1:-com.ratelimitx.core.benchmark.*}
+THREADS=${2:-1,8,64}
+BACKENDS=${3:-mock,local}
+
+# The "local" backend needs a redis-server on localhost:6379
+if [[ "$BACKENDS" == *local* ]]; then
+    echo -e "${BLUE}Checking for local redis-server...${NC}"
+    if ! redis-cli -p 6379 ping > /dev/null 2>&1; then
+        echo -e "${RED}Error: no redis-server on localhost:6379${NC}"
+        echo "Start one with: docker-compose up -d redis   (or pass 'mock' as the backend)"
+        exit 1
+    fi
+    echo -e "${GREEN}✓ redis-server is running${NC}"
+fi
+
+echo -e "${BLUE}Running JMH benchmarks...${NC}"
+mvn -B -Pbenchmark test-compile exec:java \
+    -Dbench.include="$INCLUDE" \
+    -Dbench.threads="$THREADS" \
+    -Dbench.backend="$BACKENDS"
+
+if [ $? -eq 0 ]; then
+    echo -e "${GREEN}Results written to target/jmh/${NC}"
+else
+    echo -e "${RED}Benchmarks failed!${NC}"
+fi
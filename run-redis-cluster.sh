@@ -0,0 +1,122 @@
+#!/bin/bash
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+RED='\033[0;31m'
+NC='\033[0m'
+
+# Usage: ./run-redis-cluster.sh [up|test|down]
+#   ./run-redis-cluster.sh up      # 3 masters + 3 replicas on ports 7000-7005
+#   ./run-redis-cluster.sh test    # run the app (cluster profile) against it and exercise the limiter
+#   ./run-redis-cluster.sh down    # stop the nodes and delete their data
+#
+# Every node is a local redis-server process (needs redis-server and
+# redis-cli on the PATH). The app also needs Postgres:
+#   docker-compose up -d postgres
+COMMAND=${1:-up}
+
+PORTS="7000 7001 7002 7003 7004 7005"
+CLUSTER_DIR="target/redis-cluster"
+BASE_URL="http://localhost:8080"
+
+cluster_up() {
+    mkdir -p "$CLUSTER_DIR"
+    for port in $PORTS; do
+        mkdir -p "$CLUSTER_DIR/$port"
+        redis-server --port "$port" --cluster-enabled yes \
+            --cluster-config-file "nodes-$port.conf" --cluster-node-timeout 5000 \
+            --dir "$CLUSTER_DIR/$port" --appendonly no --save "" \
+            --daemonize yes --logfile "redis.log" --pidfile "$PWD/$CLUSTER_DIR/$port/redis.pid"
+    done
+
+    for port in $PORTS; do
+        for _ in $(seq 1 20); do
+            redis-cli -p "$port" ping > /dev/null 2>&1 && break
+            sleep 0.2
+        done
+    done
+
+    if redis-cli -p 7000 cluster info 2> /dev/null | grep -q "cluster_state:ok"; then
+        echo -e "${GREEN}✓ Cluster already formed${NC}"
+        return
+    fi
+
+    echo -e "${BLUE}Creating cluster...${NC}"
+    local nodes=""
+    for port in $PORTS; do
+        nodes="$nodes 127.0.0.1:$port"
+    done
+    redis-cli --cluster create $nodes --cluster-replicas 1 --cluster-yes > /dev/null || {
+        echo -e "${RED}Cluster creation failed${NC}"; exit 1;
+    }
+
+    for _ in $(seq 1 30); do
+        redis-cli -p 7000 cluster info | grep -q "cluster_state:ok" && break
+        sleep 1
+    done
+    echo -e "${GREEN}✓ Redis Cluster up on ports ${PORTS// /, }${NC}"
+}
+
+cluster_down() {
+    for port in $PORTS; do
+        redis-cli -p "$port" shutdown nosave > /dev/null 2>&1
+    done
+    rm -rf "$CLUSTER_DIR"
+    echo -e "${GREEN}✓ Redis Cluster stopped${NC}"
+}
+
+cluster_test() {
+    cluster_up
+
+    echo -e "${BLUE}Building application jar...${NC}"
+    mvn -B -q package -DskipTests || { echo -e "${RED}Build failed${NC}"; exit 1; }
+    JAR=$(ls target/*.jar | grep -v original | head -1)
+
+    echo -e "${BLUE}Starting RateLimitX (cluster profile)...${NC}"
+    java -jar "$JAR" --spring.profiles.active=cluster > target/cluster-test.log 2>&1 &
+    local app_pid=$!
+    for _ in $(seq 1 60); do
+        curl -s "$BASE_URL/admin/health" > /dev/null 2>&1 && break
+        sleep 1
+    done
+
+    local user="cluster-$RANDOM"
+    curl -s -X POST "$BASE_URL/auth/register" -H "Content-Type: application/json" \
+        -d "{\"username\":\"$user\",\"email\":\"$user@example.com\",\"password\":\"password\"}" > /dev/null
+    local token
+    token=$(curl -s -X POST "$BASE_URL/auth/login" -H "Content-Type: application/json" \
+        -d "{\"username\":\"$user\",\"password\":\"password\"}" | sed -n 's/.*"token":"\([^"]*\)".*/\1/p')
+
+    local allowed=0 limited=0 other=0
+    for _ in $(seq 1 30); do
+        case $(curl -s -o /dev/null -w "%{http_code}" "$BASE_URL/api/data" -H "Authorization: Bearer $token") in
+            200) allowed=$((allowed + 1)) ;;
+            429) limited=$((limited + 1)) ;;
+            *) other=$((other + 1)) ;;
+        esac
+    done
+
+    kill "$app_pid"
+    wait "$app_pid" 2> /dev/null
+
+    echo "  allowed: $allowed, limited: $limited, other: $other"
+    echo "  keys for $user:"
+    redis-cli -p 7000 --cluster call 127.0.0.1:7000 --cluster-only-masters \
+        SCAN 0 MATCH "*{$user}*" COUNT 10000 2> /dev/null | grep -v "^>>>" | sed 's/^/    /'
+
+    if grep -q "CROSSSLOT" target/cluster-test.log; then
+        echo -e "${RED}✗ CROSSSLOT errors in target/cluster-test.log${NC}"
+        exit 1
+    fi
+    if [ "$limited" -eq 0 ] || [ "$other" -ne 0 ]; then
+        echo -e "${RED}✗ Unexpected responses, see target/cluster-test.log${NC}"
+        exit 1
+    fi
+    echo -e "${GREEN}✓ Limiter works against Redis Cluster${NC}"
+}
+
+case "$COMMAND" in
+    up) cluster_up ;;
+    down) cluster_down ;;
+    test) cluster_test ;;
+    *) echo "Usage: $0 [up|test|down]"; exit 1 ;;
+esac
@@ -0,0 +1,70 @@
+#!/bin/bash
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+RED='\033[0;31m'
+NC='\033[0m'
+
+# Usage: ./run-thread-comparison.sh [concurrency] [duration-sec] [redis-stall-ms]
+#   ./run-thread-comparison.sh                 # 400 users, 60s, Redis stalled 50ms every 200ms
+#   ./run-thread-comparison.sh 800 120 0       # 800 users, 120s, no Redis stalls
+#
+# Runs ThreadModelComparisonSimulation twice: platform threads (default
+# profile) and virtual threads (virtual profile). Needs Redis and Postgres:
+#   docker-compose up -d redis postgres
+CONCURRENCY=${1:-400}
+DURATION=${2:-60}
+STALL_MS=${3:-50}
+
+BASE_URL="http://localhost:8080"
+REDIS_CONTAINER="ratelimitx-redis"
+
+echo -e "${BLUE}Building application jar...${NC}"
+mvn -B -q package -DskipTests || { echo -e "${RED}Build failed${NC}"; exit 1; }
+JAR=$(ls target/*.jar | grep -v original | head -1)
+
+stall_redis() {
+    # DEBUG SLEEP blocks the whole server: every in-flight check waits
+    while true; do
+        docker exec "$REDIS_CONTAINER" redis-cli DEBUG SLEEP "$(echo "scale=3; $STALL_MS/1000" | bc)" > /dev/null 2>&1
+        sleep 0.2
+    done
+}
+
+run_mode() {
+    local label=$1
+    local profile=$2
+
+    echo -e "${BLUE}Starting RateLimitX ($label threads)...${NC}"
+    java -Djdk.tracePinnedThreads=short -jar "$JAR" ${profile:+--spring.profiles.active=$profile} \
+        > "target/thread-comparison-$label.log" 2>&1 &
+    local app_pid=$!
+
+    for _ in $(seq 1 60); do
+        curl -s "$BASE_URL/admin/health" > /dev/null 2>&1 && break
+        sleep 1
+    done
+
+    local stall_pid=""
+    if [ "$STALL_MS" -gt 0 ]; then
+        stall_redis &
+        stall_pid=$!
+    fi
+
+    mvn -B gatling:test \
+        -Dgatling.simulationClass=loadtest.ThreadModelComparisonSimulation \
+        -Dconcurrency="$CONCURRENCY" -DdurationSec="$DURATION" -Dlabel="$label"
+
+    [ -n "$stall_pid" ] && kill "$stall_pid" 2> /dev/null
+    kill "$app_pid"
+    wait "$app_pid" 2> /dev/null
+    echo -e "${GREEN}✓ $label run finished (app log: target/thread-comparison-$label.log)${NC}"
+}
+
+run_mode platform ""
+run_mode virtual virtual
+
+echo ""
+echo -e "${GREEN}Reports (newest two):${NC}"
+ls -td target/gatling/*/ | head -2
+echo "Pinned threads in the virtual run:"
+grep -c "VirtualThreadPinned\|Virtual thread pinned" target/thread-comparison-virtual.log
@@ -0,0 +1,104 @@
+package com.ratelimitx.core.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.github.fppt.jedismock.RedisServer;
+import com.ratelimitx.core.circuitbreaker.CircuitBreaker;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.service.BatchedCheckExecutor;
+import com.ratelimitx.core.service.GcraService;
+import com.ratelimitx.core.service.RateLimiterService;
+import com.ratelimitx.core.service.SlidingWindowService;
+import com.ratelimitx.core.service.TokenBucketService;
+import com.ratelimitx.core.service.TokenLeaseService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
+/**
+ * Minimal Spring context for benchmarks.
+ *
+ * Wires the real limiter services against either an in-process Redis
+ * stand-in ("mock", jedis-mock) or a local redis-server ("local",
+ * -Dredis.host / -Dredis.port, defaults to localhost:6379).
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    private final RedisServer mockServer;
+    private final AnnotationConfigApplicationContext context;
+
+    public BenchmarkContext(String backend) throws IOException {
+        String host;
+        int port;
+
+        if ("mock".equals(backend)) {
+            mockServer = RedisServer.newRedisServer();
+            mockServer.start();
+            host = mockServer.getHost();
+            port = mockServer.getBindPort();
+        } else if ("local".equals(backend)) {
+            mockServer = null;
+            host = System.getProperty("redis.host", "localhost");
+            port = Integer.getInteger("redis.port", 6379);
+        } else {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+
+        context = new AnnotationConfigApplicationContext();
+        // Batching lanes are only used by the *Batched benchmarks
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("ratelimit.batching.enabled", "true")));
+        context.registerBean(LettuceConnectionFactory.class,
+                () -> new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port)));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(
+                RedisConfig.class,
+                RateLimitConfig.class,
+                RedisKeys.class,
+                CircuitBreaker.class,
+                RedisShards.class,
+                RateLimiterService.class,
+                TokenBucketService.class,
+                SlidingWindowService.class,
+                TokenLeaseService.class,
+                BatchedCheckExecutor.class,
+                GcraService.class,
+                LocalRateLimiter.class
+        );
+        context.refresh();
+
+        // Start every run from an empty keyspace
+        redis().execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public StringRedisTemplate redis() {
+        return context.getBean(StringRedisTemplate.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (mockServer != null) {
+            mockServer.stop();
+        }
+    }
+}
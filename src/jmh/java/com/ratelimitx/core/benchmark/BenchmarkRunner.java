@@ -0,0 +1,53 @@
+package com.ratelimitx.core.benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs every benchmark at 1, 8 and 64 threads.
+ *
+ * - Throughput mode       -> ops/sec (reported per microsecond)
+ * - SampleTime mode       -> latency distribution incl. p0.99
+ * - GC profiler           -> gc.alloc.rate.norm = allocated bytes per op
+ *
+ * Overrides (system properties):
+ *   -Dbench.include=<regex>     benchmark filter   (default: all)
+ *   -Dbench.threads=1,8,64      thread counts
+ *   -Dbench.backend=mock,local  Redis backends
+ *
+ * Results are written to target/jmh/result-<threads>t.json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("bench.include", "com.ratelimitx.core.benchmark.*");
+        int[] threadCounts = Arrays.stream(System.getProperty("bench.threads", "1,8,64").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        String[] backends = System.getProperty("bench.backend", "mock,local").split(",");
+
+        new File("target/jmh").mkdirs();
+
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .param("backend", backends)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh/result-" + threads + "t.json")
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
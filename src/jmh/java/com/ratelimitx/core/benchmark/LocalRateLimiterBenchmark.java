@@ -0,0 +1,80 @@
+package com.ratelimitx.core.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.model.RateLimitResult;
+
+
+/**
+ * In-process fallback limiter. No Redis involved, so the backend
+ * parameter does not apply here.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LocalRateLimiterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Limiter {
+
+        @Param({"uniform", "skewed"})
+        public String distribution;
+
+        @Param({"10000"})
+        public int users;
+
+        @Param({"10", "1000"})
+        public int maxRequests;
+
+        LocalRateLimiter localRateLimiter;
+        KeyDistribution keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            localRateLimiter = new LocalRateLimiter();
+            keys = KeyDistribution.of(distribution, users, 42L);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            position = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    @Benchmark
+    public RateLimitResult isAllowed(Limiter limiter, Cursor cursor) {
+        return limiter.localRateLimiter.isAllowed(limiter.keys.key(cursor.position++), limiter.maxRequests);
+    }
+
+    @Benchmark
+    public RateLimitResult isAllowedSliding(Limiter limiter, Cursor cursor) {
+        return limiter.localRateLimiter.isAllowedSliding(limiter.keys.key(cursor.position++), limiter.maxRequests, 60);
+    }
+
+    @Benchmark
+    public RateLimitResult isAllowedGcra(Limiter limiter, Cursor cursor) {
+        return limiter.localRateLimiter.isAllowedGcra(limiter.keys.key(cursor.position++), limiter.maxRequests, 60000);
+    }
+}
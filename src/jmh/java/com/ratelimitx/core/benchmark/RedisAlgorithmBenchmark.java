@@ -0,0 +1,131 @@
+package com.ratelimitx.core.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.BatchedCheckExecutor;
+import com.ratelimitx.core.service.GcraService;
+import com.ratelimitx.core.service.RateLimiterService;
+import com.ratelimitx.core.service.SlidingWindowService;
+import com.ratelimitx.core.service.TokenBucketService;
+import com.ratelimitx.core.service.TokenLeaseService;
+
+
+/**
+ * Redis-backed algorithms, measured end to end through the real services
+ * (script execution, serialization, connection handling).
+ *
+ * Thread counts are applied by {@link BenchmarkRunner}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RedisAlgorithmBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Limiters {
+
+        @Param({"mock", "local"})
+        public String backend;
+
+        @Param({"uniform", "skewed"})
+        public String distribution;
+
+        @Param({"10000"})
+        public int users;
+
+        BenchmarkContext context;
+        KeyDistribution keys;
+        TokenBucketService tokenBucket;
+        SlidingWindowService slidingWindow;
+        RateLimiterService fixedWindow;
+        TokenLeaseService tokenLease;
+        BatchedCheckExecutor batched;
+        GcraService gcra;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            context = new BenchmarkContext(backend);
+            keys = KeyDistribution.of(distribution, users, 42L);
+            tokenBucket = context.getBean(TokenBucketService.class);
+            slidingWindow = context.getBean(SlidingWindowService.class);
+            fixedWindow = context.getBean(RateLimiterService.class);
+            tokenLease = context.getBean(TokenLeaseService.class);
+            batched = context.getBean(BatchedCheckExecutor.class);
+            gcra = context.getBean(GcraService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            position = ThreadLocalRandom.current().nextInt();
+        }
+
+        String next(KeyDistribution keys) {
+            return keys.key(position++);
+        }
+    }
+
+    @Benchmark
+    public RateLimitResult tokenBucketTryConsume(Limiters limiters, Cursor cursor) {
+        return limiters.tokenBucket.tryConsume(cursor.next(limiters.keys));
+    }
+
+    @Benchmark
+    public RateLimitResult slidingWindowCheckRateLimit(Limiters limiters, Cursor cursor) {
+        return limiters.slidingWindow.checkRateLimit(cursor.next(limiters.keys));
+    }
+
+    @Benchmark
+    public RateLimitResult fixedWindowCheckWithInfo(Limiters limiters, Cursor cursor) {
+        return limiters.fixedWindow.checkWithInfo(cursor.next(limiters.keys));
+    }
+
+    @Benchmark
+    public RateLimitResult tokenLeaseTryAcquire(Limiters limiters, Cursor cursor) {
+        // Premium-tier limit so leases span more than one permit
+        return limiters.tokenLease.tryAcquire(cursor.next(limiters.keys), 100);
+    }
+
+    @Benchmark
+    public RateLimitResult gcraCheckRateLimit(Limiters limiters, Cursor cursor) {
+        return limiters.gcra.checkRateLimit(cursor.next(limiters.keys));
+    }
+
+    @Benchmark
+    public RateLimitResult slidingWindowBatched(Limiters limiters, Cursor cursor) {
+        return limiters.batched.slidingWindow(cursor.next(limiters.keys), 10, 60);
+    }
+
+    @Benchmark
+    public RateLimitResult tokenBucketBatched(Limiters limiters, Cursor cursor) {
+        return limiters.batched.tokenBucket(cursor.next(limiters.keys), 10, 1.0);
+    }
+}
@@ -3,12 +3,14 @@ package com.ratelimitx.core;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import com.ratelimitx.core.config.RateLimitConfig;
 
 
 @SpringBootApplication
 @EnableConfigurationProperties(RateLimitConfig.class)
+@EnableScheduling
 public class RateLimitXApplication {
 
 	public static void main(String[] args) {
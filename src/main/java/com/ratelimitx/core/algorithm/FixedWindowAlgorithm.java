@@ -0,0 +1,73 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.LimitResolver;
+import com.ratelimitx.core.service.RateLimiterService;
+
+import reactor.core.publisher.Mono;
+
+
+@Component
+public class FixedWindowAlgorithm implements RateLimitAlgorithm {
+
+    @Autowired
+    private RateLimiterService fixedWindowService;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    private LimitResolver limitResolver;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Override
+    public String name() {
+        return "fixed-window";
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId) {
+        return fixedWindowService.checkWithInfo(userId, limitResolver.resolve(userId, config.getMaxRequests()));
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        return fixedWindowService.checkWithInfo(userId, limit);
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId) {
+        return tryAcquireReactive(userId, limitResolver.resolve(userId, config.getMaxRequests()));
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId, int limit) {
+        return fixedWindowService.checkWithInfoReactive(userId, limit);
+    }
+
+    @Override
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return fixedWindowService.reconcile(deltas);
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId) {
+        return localRateLimiter.checkRateLimit(userId);
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId, int limit) {
+        return localRateLimiter.isAllowed(userId, limit);
+    }
+}
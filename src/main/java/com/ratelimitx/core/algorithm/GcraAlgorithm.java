@@ -0,0 +1,69 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.GcraService;
+
+import reactor.core.publisher.Mono;
+
+
+@Component
+public class GcraAlgorithm implements RateLimitAlgorithm {
+
+    @Autowired
+    private GcraService gcraService;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Override
+    public String name() {
+        return "gcra";
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId) {
+        return tryAcquire(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        return gcraService.checkRateLimit(userId, limit, config.getWindowSizeSeconds());
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId) {
+        return tryAcquireReactive(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId, int limit) {
+        return gcraService.checkRateLimitReactive(userId, limit, config.getWindowSizeSeconds());
+    }
+
+    @Override
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return gcraService.reconcile(deltas);
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId) {
+        return tryAcquireLocal(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId, int limit) {
+        return localRateLimiter.isAllowedGcra(userId, limit, config.getWindowSizeSeconds() * 1000L);
+    }
+}
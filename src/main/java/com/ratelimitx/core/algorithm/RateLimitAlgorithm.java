@@ -0,0 +1,55 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+
+/**
+ * A rate limiting algorithm, selected by name through ratelimit.algorithm.
+ *
+ * Each implementation provides the shared (Redis) check and an in-process
+ * check with the same semantics, used while the circuit breaker is open.
+ * The single-argument methods use the configured defaults; the limit
+ * overloads take the caller's tier limit and derive any other parameters
+ * from it.
+ *
+ * tryAcquireReactive is the non-blocking form of tryAcquire.
+ * Algorithms without a reactive Redis call inherit a version that runs the
+ * blocking check on the bounded elastic scheduler.
+ *
+ * reconcile writes what tryAcquireLocal admitted into this algorithm's
+ * Redis state, once Redis is back (see FallbackReconciler).
+ */
+public interface RateLimitAlgorithm {
+
+    String name();
+
+    RateLimitResult tryAcquire(String userId);
+
+    RateLimitResult tryAcquire(String userId, int limit);
+
+    RateLimitResult tryAcquireLocal(String userId);
+
+    RateLimitResult tryAcquireLocal(String userId, int limit);
+
+    /**
+     * Apply fallback admissions in pipelined batches; returns the number of
+     * keys updated (stale admissions are skipped).
+     */
+    int reconcile(List<FallbackLedger.Delta> deltas);
+
+    default Mono<RateLimitResult> tryAcquireReactive(String userId) {
+        return Mono.fromCallable(() -> tryAcquire(userId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    default Mono<RateLimitResult> tryAcquireReactive(String userId, int limit) {
+        return Mono.fromCallable(() -> tryAcquire(userId, limit))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,62 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * All RateLimitAlgorithm beans, by name.
+ */
+@Component
+public class RateLimitAlgorithmRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitAlgorithmRegistry.class);
+
+    static final String DEFAULT_ALGORITHM = "fixed-window";
+
+    @Autowired
+    private List<RateLimitAlgorithm> algorithms;
+
+    private final Map<String, RateLimitAlgorithm> byName = new TreeMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (RateLimitAlgorithm algorithm : algorithms) {
+            RateLimitAlgorithm previous = byName.put(algorithm.name(), algorithm);
+            if (previous != null) {
+                throw new IllegalStateException("Duplicate rate limit algorithm: " + algorithm.name());
+            }
+        }
+        logger.info("Rate limit algorithms: {}", byName.keySet());
+    }
+
+    public boolean contains(String name) {
+        return byName.containsKey(name);
+    }
+
+    /**
+     * The named algorithm; unknown names fall back to fixed-window, as the
+     * string switch this replaces did.
+     */
+    public RateLimitAlgorithm resolve(String name) {
+        RateLimitAlgorithm algorithm = byName.get(name);
+        if (algorithm == null) {
+            logger.warn("Unknown rate limit algorithm '{}', using {}", name, DEFAULT_ALGORITHM);
+            return byName.get(DEFAULT_ALGORITHM);
+        }
+        return algorithm;
+    }
+
+    public Set<String> names() {
+        return byName.keySet();
+    }
+}
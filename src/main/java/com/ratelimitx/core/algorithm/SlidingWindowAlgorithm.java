@@ -0,0 +1,77 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.BatchedCheckExecutor;
+import com.ratelimitx.core.service.SlidingWindowService;
+
+import reactor.core.publisher.Mono;
+
+
+@Component
+public class SlidingWindowAlgorithm implements RateLimitAlgorithm {
+
+    @Autowired
+    private SlidingWindowService slidingWindowService;
+
+    @Autowired
+    private BatchedCheckExecutor batchedCheckExecutor;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Override
+    public String name() {
+        return "sliding-window";
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId) {
+        return tryAcquire(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        if (batchedCheckExecutor.isEnabled()) {
+            return batchedCheckExecutor.slidingWindow(userId, limit, config.getWindowSizeSeconds());
+        }
+        return slidingWindowService.checkRateLimit(userId, limit, config.getWindowSizeSeconds());
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId) {
+        return tryAcquireReactive(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId, int limit) {
+        // Not batched: the micro-batcher parks callers, which is what this path avoids
+        return slidingWindowService.checkRateLimitReactive(userId, limit, config.getWindowSizeSeconds());
+    }
+
+    @Override
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return slidingWindowService.reconcile(deltas);
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId) {
+        return tryAcquireLocal(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId, int limit) {
+        return localRateLimiter.isAllowedSliding(userId, limit, config.getWindowSizeSeconds());
+    }
+}
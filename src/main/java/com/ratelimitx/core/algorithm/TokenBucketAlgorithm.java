@@ -0,0 +1,104 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.BatchedCheckExecutor;
+import com.ratelimitx.core.service.TokenBucketService;
+
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Token bucket. A tier limit becomes the bucket capacity, with the refill
+ * rate scaled by the same factor, so every tier refills a full bucket in
+ * the same time as the configured default.
+ */
+@Component
+public class TokenBucketAlgorithm implements RateLimitAlgorithm {
+
+    @Autowired
+    private TokenBucketService tokenBucketService;
+
+    @Autowired
+    private BatchedCheckExecutor batchedCheckExecutor;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Override
+    public String name() {
+        return "token-bucket";
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId) {
+        return tryAcquire(userId, config.getBucketCapacity());
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        double refillRate = refillRate(limit);
+        if (batchedCheckExecutor.isEnabled()) {
+            return batchedCheckExecutor.tokenBucket(userId, limit, refillRate);
+        }
+        return tokenBucketService.tryConsume(userId, limit, refillRate);
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId) {
+        return tryAcquireReactive(userId, config.getBucketCapacity());
+    }
+
+    @Override
+    public Mono<RateLimitResult> tryAcquireReactive(String userId, int limit) {
+        return tokenBucketService.tryConsumeReactive(userId, limit, refillRate(limit));
+    }
+
+    @Override
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        long now = System.currentTimeMillis();
+        List<TokenBucketService.Check> checks = new ArrayList<>(deltas.size());
+        for (FallbackLedger.Delta delta : deltas) {
+            int capacity = delta.limit() == FallbackLedger.DEFAULT_LIMIT ? config.getBucketCapacity() : delta.limit();
+            double refillRate = refillRate(capacity);
+            // A bucket refilled completely since then owes nothing
+            if (now - delta.lastAt() >= capacity / refillRate * 1000) {
+                continue;
+            }
+            int tokens = (int) Math.min(delta.count(), capacity);
+            checks.add(new TokenBucketService.Check(delta.key(), tokens, capacity, refillRate));
+        }
+        if (!checks.isEmpty()) {
+            tokenBucketService.reconcile(checks);
+        }
+        return checks.size();
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId) {
+        return tryAcquireLocal(userId, config.getBucketCapacity());
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId, int limit) {
+        // GCRA admits exactly like a bucket of this capacity and refill rate
+        long refillMs = (long) Math.ceil(limit * 1000.0 / refillRate(limit));
+        return localRateLimiter.isAllowedGcra(userId, limit, refillMs);
+    }
+
+    private double refillRate(int capacity) {
+        return config.getRefillRate() * capacity / config.getBucketCapacity();
+    }
+}
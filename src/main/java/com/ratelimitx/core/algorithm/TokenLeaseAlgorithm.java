@@ -0,0 +1,62 @@
+package com.ratelimitx.core.algorithm;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.service.TokenLeaseService;
+
+
+/**
+ * Token lease: a fixed window in Redis, spent in locally held chunks, so
+ * the fallback is the local fixed window.
+ */
+@Component
+public class TokenLeaseAlgorithm implements RateLimitAlgorithm {
+
+    @Autowired
+    private TokenLeaseService tokenLeaseService;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Override
+    public String name() {
+        return "token-lease";
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId) {
+        return tokenLeaseService.tryAcquire(userId);
+    }
+
+    @Override
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        return tokenLeaseService.tryAcquire(userId, limit);
+    }
+
+    @Override
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return tokenLeaseService.reconcile(deltas);
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId) {
+        return tryAcquireLocal(userId, config.getMaxRequests());
+    }
+
+    @Override
+    public RateLimitResult tryAcquireLocal(String userId, int limit) {
+        // Same window as TokenLeaseService
+        return localRateLimiter.isAllowed(userId, limit, config.getWindowSizeSeconds() * 1000L);
+    }
+}
@@ -0,0 +1,169 @@
+package com.ratelimitx.core.circuitbreaker;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Outcomes of the most recent calls, for the CLOSED state of the breaker.
+ *
+ * COUNT_BASED keeps the last {@code size} calls in a ring. TIME_BASED keeps
+ * {@code size} one-second buckets, so it covers the calls of the last
+ * {@code size} seconds. Either way the totals are maintained incrementally;
+ * recording a call is O(1) apart from clearing buckets that went stale.
+ */
+class CallWindow {
+
+    enum Type { COUNT_BASED, TIME_BASED }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final Type type;
+    private final int size;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // COUNT_BASED: one outcome per slot
+    private final byte[] outcomes;
+    private int next;
+
+    // TIME_BASED: per-second counts, second s lives in bucket s % size
+    private long lastSecond;
+    private final int[] bucketCalls;
+    private final int[] bucketFailures;
+    private final int[] bucketSlow;
+
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    CallWindow(Type type, int size) {
+        this.type = type;
+        this.size = Math.max(1, size);
+        if (type == Type.COUNT_BASED) {
+            outcomes = new byte[this.size];
+            bucketCalls = null;
+            bucketFailures = null;
+            bucketSlow = null;
+        } else {
+            outcomes = null;
+            bucketCalls = new int[this.size];
+            bucketFailures = new int[this.size];
+            bucketSlow = new int[this.size];
+        }
+    }
+
+    Snapshot record(boolean failed, boolean slow, long nowMs) {
+        lock.lock();
+        try {
+            if (type == Type.COUNT_BASED) {
+                recordCount(failed, slow);
+            } else {
+                recordTime(failed, slow, nowMs / 1000);
+            }
+            return new Snapshot(calls, failures, slowCalls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Snapshot snapshot(long nowMs) {
+        lock.lock();
+        try {
+            if (type == Type.TIME_BASED) {
+                expire(nowMs / 1000);
+            }
+            return new Snapshot(calls, failures, slowCalls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void reset() {
+        lock.lock();
+        try {
+            if (type == Type.COUNT_BASED) {
+                Arrays.fill(outcomes, (byte) 0);
+                next = 0;
+            } else {
+                lastSecond = 0;
+                Arrays.fill(bucketCalls, 0);
+                Arrays.fill(bucketFailures, 0);
+                Arrays.fill(bucketSlow, 0);
+            }
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordCount(boolean failed, boolean slow) {
+        if (calls == size) {
+            // Ring is full: the oldest outcome leaves the window
+            byte old = outcomes[next];
+            calls--;
+            if ((old & FAILED) != 0) {
+                failures--;
+            }
+            if ((old & SLOW) != 0) {
+                slowCalls--;
+            }
+        }
+        outcomes[next] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        next = (next + 1) % size;
+        add(failed, slow);
+    }
+
+    private void recordTime(boolean failed, boolean slow, long second) {
+        expire(second);
+        int i = (int) (second % size);
+        bucketCalls[i]++;
+        if (failed) {
+            bucketFailures[i]++;
+        }
+        if (slow) {
+            bucketSlow[i]++;
+        }
+        add(failed, slow);
+    }
+
+    // Clear the buckets of the seconds that passed since the last call
+    private void expire(long second) {
+        if (second <= lastSecond) {
+            return;
+        }
+        for (long s = Math.max(lastSecond + 1, second - size + 1); s <= second; s++) {
+            int i = (int) (s % size);
+            calls -= bucketCalls[i];
+            failures -= bucketFailures[i];
+            slowCalls -= bucketSlow[i];
+            bucketCalls[i] = 0;
+            bucketFailures[i] = 0;
+            bucketSlow[i] = 0;
+        }
+        lastSecond = second;
+    }
+
+    private void add(boolean failed, boolean slow) {
+        calls++;
+        if (failed) {
+            failures++;
+        }
+        if (slow) {
+            slowCalls++;
+        }
+    }
+
+    record Snapshot(int calls, int failures, int slowCalls) {
+
+        double failureRate() {
+            return calls == 0 ? 0 : failures * 100.0 / calls;
+        }
+
+        double slowCallRate() {
+            return calls == 0 ? 0 : slowCalls * 100.0 / calls;
+        }
+    }
+}
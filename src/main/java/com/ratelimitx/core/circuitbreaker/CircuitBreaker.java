@@ -2,110 +2,326 @@ package com.ratelimitx.core.circuitbreaker;
 
 
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-
-
-
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+
+
+
+/**
+ * Sliding-window circuit breaker around the Redis calls.
+ *
+ * CLOSED: outcomes go into a count- or time-based window (CallWindow).
+ * Once it holds minimum-calls calls, the circuit opens when the failure
+ * rate or the share of calls slower than slow-call-duration-ms reaches its
+ * threshold, so a Redis that is slow but still answering trips it too.
+ *
+ * OPEN: everything uses the fallback for open-duration-ms.
+ *
+ * HALF_OPEN: at most half-open-permitted-calls probes are in flight at a
+ * time, the rest keep using the fallback. Once that many probes have
+ * completed, the same thresholds decide between CLOSED and OPEN.
+ *
+ * The bean guards the spring.data.redis connection; newInstance() creates
+ * further breakers with the same settings (one per Redis shard). Metrics
+ * carry the breaker's name.
+ */
 @Component
 public class CircuitBreaker {
 
     private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
 
-    private static final int FAILURE_THRESHOLD = 3;
-    private static final int TIMEOUT_DURATION_MS = 30000;
+    @Value("${ratelimit.circuit-breaker.window-type:COUNT_BASED}")
+    private CallWindow.Type windowType;
+
+    @Value("${ratelimit.circuit-breaker.window-size:100}")
+    private int windowSize;
+
+    @Value("${ratelimit.circuit-breaker.minimum-calls:20}")
+    private int minimumCalls;
+
+    @Value("${ratelimit.circuit-breaker.failure-rate-threshold:50}")
+    private double failureRateThreshold;
+
+    @Value("${ratelimit.circuit-breaker.slow-call-rate-threshold:80}")
+    private double slowCallRateThreshold;
+
+    @Value("${ratelimit.circuit-breaker.slow-call-duration-ms:50}")
+    private long slowCallDurationMs;
+
+    @Value("${ratelimit.circuit-breaker.open-duration-ms:30000}")
+    private long openDurationMs;
+
+    @Value("${ratelimit.circuit-breaker.half-open-permitted-calls:5}")
+    private int halfOpenPermittedCalls;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String name = "redis";
 
     private final AtomicReference<CircuitBreakerState> state = new AtomicReference<>(CircuitBreakerState.CLOSED);
 
-    private final AtomicInteger failureCount = new AtomicInteger(0);
+    private CallWindow window;
+    private long slowCallDurationNanos;
+
+    private final AtomicInteger probesInFlight = new AtomicInteger();
+    private final AtomicInteger probeCalls = new AtomicInteger();
+    private final AtomicInteger probeFailures = new AtomicInteger();
+    private final AtomicInteger probeSlowCalls = new AtomicInteger();
+
     private volatile long lastFailureTime = 0;
     private volatile long openedAt = 0;
 
-    public <T> T execute(Supplier<T> operation, Supplier<T> fallback){
+    private final List<Consumer<CircuitBreakerState>> stateListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Counter> transitionCounters = new ConcurrentHashMap<>();
+    private Counter notPermitted;
+
+    @PostConstruct
+    public void init() {
+        window = new CallWindow(windowType, windowSize);
+        slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMs);
+
+        notPermitted = Counter.builder("ratelimit.circuitbreaker.not.permitted")
+                .description("Calls sent to the fallback without trying Redis")
+                .tag("breaker", name)
+                .register(meterRegistry);
+        Gauge.builder("ratelimit.circuitbreaker.failure.rate",
+                        () -> window.snapshot(System.currentTimeMillis()).failureRate())
+                .description("Failure rate (%) in the CLOSED window")
+                .tag("breaker", name)
+                .register(meterRegistry);
+        Gauge.builder("ratelimit.circuitbreaker.slow.call.rate",
+                        () -> window.snapshot(System.currentTimeMillis()).slowCallRate())
+                .description("Slow call rate (%) in the CLOSED window")
+                .tag("breaker", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A separate breaker with this one's settings.
+     */
+    public CircuitBreaker newInstance(String name) {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.name = name;
+        breaker.windowType = windowType;
+        breaker.windowSize = windowSize;
+        breaker.minimumCalls = minimumCalls;
+        breaker.failureRateThreshold = failureRateThreshold;
+        breaker.slowCallRateThreshold = slowCallRateThreshold;
+        breaker.slowCallDurationMs = slowCallDurationMs;
+        breaker.openDurationMs = openDurationMs;
+        breaker.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        breaker.meterRegistry = meterRegistry;
+        breaker.init();
+        return breaker;
+    }
 
-        CircuitBreakerState currentState = state.get();
+    public String getName() {
+        return name;
+    }
 
-        switch(currentState){
-            case CLOSED:
-                return executeInClosedState(operation, fallback);
-            case OPEN:
-                return executeInOpenState(operation, fallback);
-            case HALF_OPEN:
-                return executeInHalfOpenState(operation, fallback);
-            default:
-                return fallback.get();
-        }
+    public <T> T execute(Supplier<T> operation, Supplier<T> fallback){
+        return execute(operation, cause -> fallback.get());
     }
 
-    private <T> T executeInClosedState(Supplier<T> operation, Supplier<T> fallback){
+    /**
+     * Same, but the fallback gets the operation's failure, or null when the
+     * circuit refused the call and Redis was never tried.
+     */
+    public <T> T execute(Supplier<T> operation, Function<Exception, T> fallback){
 
+        CircuitBreakerState admittedIn = tryAcquirePermission();
+        if (admittedIn == null) {
+            return fallback.apply(null);
+        }
 
-            try{
-                T result= operation.get();
-                onSuccess();
-                return result;
-            }catch(Exception e){
-                onFailure();
+        long start = System.nanoTime();
+        try {
+            T result = operation.get();
+            recordSuccess(admittedIn, System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            recordFailure(admittedIn, System.nanoTime() - start);
+            return fallback.apply(e);
+        }
+    }
 
-                logger.warn("Circuit Breaker: Operation failed in CLOSED state. Failures: {}/{}",
-                failureCount.get(), FAILURE_THRESHOLD);
+    /**
+     * Called with the new state after every transition.
+     */
+    public void addStateListener(Consumer<CircuitBreakerState> listener) {
+        stateListeners.add(listener);
+    }
 
-                return fallback.get();
+    // ==================== CALL HOOKS ====================
+    // Shared by execute() and ReactiveCircuitBreaker, so both paths drive one state machine.
+
+    /**
+     * Whether a call may go to Redis now: the state it was admitted in
+     * (CLOSED or HALF_OPEN), or null to use the fallback. Every admitted
+     * call must end in recordSuccess, recordFailure or releasePermission.
+     */
+    CircuitBreakerState tryAcquirePermission() {
+        CircuitBreakerState current = state.get();
+
+        if (current == CircuitBreakerState.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                notPermitted.increment();
+                return null;
             }
+            transition(CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN, "open duration passed, probing Redis");
+            current = state.get();
         }
-    private <T> T executeInOpenState(Supplier<T> operation, Supplier<T> fallback) {
 
-        if (System.currentTimeMillis() - openedAt >= TIMEOUT_DURATION_MS) {
-            if (state.compareAndSet(CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN)) {
-                logger.info("Circuit Breaker: OPEN → HALF_OPEN (timeout passed, testing Redis)");
+        if (current == CircuitBreakerState.HALF_OPEN) {
+            if (probesInFlight.incrementAndGet() > halfOpenPermittedCalls) {
+                probesInFlight.decrementAndGet();
+                notPermitted.increment();
+                return null;
             }
-            return executeInHalfOpenState(operation, fallback);
+            return CircuitBreakerState.HALF_OPEN;
         }
 
-        logger.debug("Circuit Breaker: OPEN state, using fallback");
-        return fallback.get();
+        return current == CircuitBreakerState.CLOSED ? CircuitBreakerState.CLOSED : null;
     }
-    private <T> T executeInHalfOpenState(Supplier<T> operation, Supplier<T> fallback) {
-        try {
-            T result = operation.get();
 
-            // Success! Redis is back - close the circuit
-            if (state.compareAndSet(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED)) {
-                failureCount.set(0);
-                logger.info("Circuit Breaker: HALF_OPEN → CLOSED (Redis recovered!)");
-            }
+    void recordSuccess(CircuitBreakerState admittedIn, long durationNanos) {
+        onResult(admittedIn, false, durationNanos);
+    }
 
-            return result;
+    void recordFailure(CircuitBreakerState admittedIn, long durationNanos) {
+        lastFailureTime = System.currentTimeMillis();
+        onResult(admittedIn, true, durationNanos);
+    }
 
-        } catch (Exception e) {
-            // Still failing - go back to OPEN
-            if (state.compareAndSet(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.OPEN)) {
-                openedAt = System.currentTimeMillis();
-                logger.warn("Circuit Breaker: HALF_OPEN → OPEN (Redis still down)");
+    /**
+     * The admitted call was abandoned without an outcome (e.g. cancelled).
+     */
+    void releasePermission(CircuitBreakerState admittedIn) {
+        if (admittedIn == CircuitBreakerState.HALF_OPEN) {
+            probesInFlight.decrementAndGet();
+        }
+    }
+
+    private void onResult(CircuitBreakerState admittedIn, boolean failed, long durationNanos) {
+        boolean slow = durationNanos > slowCallDurationNanos;
+
+        if (admittedIn == CircuitBreakerState.HALF_OPEN) {
+            probesInFlight.decrementAndGet();
+            onProbeResult(failed, slow);
+            return;
+        }
+
+        CallWindow.Snapshot snapshot = window.record(failed, slow, System.currentTimeMillis());
+        if (failed) {
+            logger.debug("Circuit Breaker: Operation failed in CLOSED state. Failure rate: {}%",
+                    snapshot.failureRate());
+        }
+
+        if (snapshot.calls() >= minimumCalls) {
+            String reason = tripReason(snapshot);
+            if (reason != null) {
+                transition(CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN, reason);
             }
+        }
+    }
+
+    private void onProbeResult(boolean failed, boolean slow) {
+        if (state.get() != CircuitBreakerState.HALF_OPEN) {
+            // Decided already; a late probe changes nothing
+            return;
+        }
+
+        if (failed) {
+            probeFailures.incrementAndGet();
+        }
+        if (slow) {
+            probeSlowCalls.incrementAndGet();
+        }
+        int calls = probeCalls.incrementAndGet();
+        if (calls < halfOpenPermittedCalls) {
+            return;
+        }
 
-            return fallback.get();
+        String reason = tripReason(new CallWindow.Snapshot(calls, probeFailures.get(), probeSlowCalls.get()));
+        if (reason != null) {
+            transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.OPEN, "probes: " + reason);
+        } else {
+            transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED, "probes succeeded, Redis recovered");
         }
     }
 
-    private void onSuccess() {
-        failureCount.set(0);
+    private String tripReason(CallWindow.Snapshot snapshot) {
+        if (snapshot.failureRate() >= failureRateThreshold) {
+            return String.format("failure rate %.1f%% >= %.1f%% over %d calls",
+                    snapshot.failureRate(), failureRateThreshold, snapshot.calls());
+        }
+        if (snapshot.slowCallRate() >= slowCallRateThreshold) {
+            return String.format("slow call rate %.1f%% >= %.1f%% (> %d ms) over %d calls",
+                    snapshot.slowCallRate(), slowCallRateThreshold, slowCallDurationMs, snapshot.calls());
+        }
+        return null;
     }
 
-    private void onFailure() {
-        int failures = failureCount.incrementAndGet();
+    private boolean transition(CircuitBreakerState from, CircuitBreakerState to, String reason) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        onTransition(from, to, reason);
+        return true;
+    }
 
-        if (failures >= FAILURE_THRESHOLD) {
-            // Open the circuit!
-            if (state.compareAndSet(CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN)) {
+    private void onTransition(CircuitBreakerState from, CircuitBreakerState to, String reason) {
+        switch (to) {
+            case OPEN:
                 openedAt = System.currentTimeMillis();
-                logger.error("Circuit Breaker: CLOSED → OPEN (threshold reached: {} failures)", failures);
+                logger.error("Circuit Breaker [{}]: {} → OPEN ({})", name, from, reason);
+                break;
+            case HALF_OPEN:
+                probeCalls.set(0);
+                probeFailures.set(0);
+                probeSlowCalls.set(0);
+                logger.info("Circuit Breaker [{}]: {} → HALF_OPEN ({})", name, from, reason);
+                break;
+            case CLOSED:
+                // Start from a clean window, the old failures are what opened us
+                window.reset();
+                logger.info("Circuit Breaker [{}]: {} → CLOSED ({})", name, from, reason);
+                break;
+        }
+
+        transitionCounters.computeIfAbsent(from + "->" + to, k -> Counter.builder("ratelimit.circuitbreaker.transitions")
+                .description("Circuit breaker state transitions")
+                .tag("breaker", name)
+                .tag("from", from.name())
+                .tag("to", to.name())
+                .register(meterRegistry)).increment();
+
+        for (Consumer<CircuitBreakerState> listener : stateListeners) {
+            try {
+                listener.accept(to);
+            } catch (Exception e) {
+                logger.warn("Circuit Breaker [{}]: state listener failed", name, e);
             }
         }
     }
@@ -128,7 +344,7 @@ public class CircuitBreaker {
         if (state.get() != CircuitBreakerState.OPEN) {
             return 0;
         }
-        long remaining = TIMEOUT_DURATION_MS - (System.currentTimeMillis() - openedAt);
+        long remaining = openDurationMs - (System.currentTimeMillis() - openedAt);
         return Math.max(0, remaining);
     }
 
@@ -138,11 +354,21 @@ public class CircuitBreaker {
 
     public java.util.Map<String, Object> getStatus() {
         java.util.Map<String, Object> status = new java.util.HashMap<>();
+        CallWindow.Snapshot snapshot = window.snapshot(System.currentTimeMillis());
 
+        status.put("name", name);
         status.put("state", state.get().toString());
-        status.put("failureCount", failureCount.get());
-        status.put("failureThreshold", FAILURE_THRESHOLD);
-        status.put("timeoutDurationMs", TIMEOUT_DURATION_MS);
+        status.put("windowType", windowType.name());
+        status.put("windowSize", windowSize);
+        status.put("bufferedCalls", snapshot.calls());
+        status.put("failureRate", snapshot.failureRate());
+        status.put("slowCallRate", snapshot.slowCallRate());
+        status.put("minimumCalls", minimumCalls);
+        status.put("failureRateThreshold", failureRateThreshold);
+        status.put("slowCallRateThreshold", slowCallRateThreshold);
+        status.put("slowCallDurationMs", slowCallDurationMs);
+        status.put("openDurationMs", openDurationMs);
+        status.put("halfOpenPermittedCalls", halfOpenPermittedCalls);
         status.put("isAllowingRequests", isAllowingRequests());
 
         if (state.get() == CircuitBreakerState.OPEN) {
@@ -150,6 +376,11 @@ public class CircuitBreaker {
             status.put("timeUntilRetryMs", getTimeUntilHalfOpenMs());
         }
 
+        if (state.get() == CircuitBreakerState.HALF_OPEN) {
+            status.put("halfOpenProbesInFlight", probesInFlight.get());
+            status.put("halfOpenProbesCompleted", probeCalls.get());
+        }
+
         if (lastFailureTime > 0) {
             status.put("lastFailureTime", Instant.ofEpochMilli(lastFailureTime).toString());
         }
@@ -158,10 +389,14 @@ public class CircuitBreaker {
     }
 
     public void reset() {
-        state.set(CircuitBreakerState.CLOSED);
-        failureCount.set(0);
+        CircuitBreakerState previous = state.getAndSet(CircuitBreakerState.CLOSED);
         openedAt = 0;
         lastFailureTime = 0;
-        logger.info("Circuit Breaker: Manually reset to CLOSED");
+        if (previous != CircuitBreakerState.CLOSED) {
+            onTransition(previous, CircuitBreakerState.CLOSED, "manual reset");
+        } else {
+            window.reset();
+        }
+        logger.info("Circuit Breaker [{}]: Manually reset to CLOSED", name);
     }
 }
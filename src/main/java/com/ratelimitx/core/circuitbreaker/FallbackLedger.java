@@ -0,0 +1,136 @@
+package com.ratelimitx.core.circuitbreaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Requests admitted by the local fallback, which Redis never saw.
+ *
+ * Callers only record admissions whose Redis call was refused or could not
+ * connect; a call that timed out may still have been applied by Redis.
+ *
+ * One entry per (algorithm, key, limit, window) holds the admitted cost of
+ * its most recent window: consumption older than a window no longer
+ * affects any algorithm's state, so the count restarts when a new window
+ * begins. FallbackReconciler drains the entries into Redis once it is
+ * reachable again.
+ */
+@Component
+public class FallbackLedger {
+
+    /**
+     * Limit of a check that used the algorithm's configured default.
+     */
+    public static final int DEFAULT_LIMIT = 0;
+
+    @Value("${ratelimit.reconcile.max-entries:100000}")
+    private int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public void record(String algorithm, String key, int limit, int windowSeconds, int cost) {
+        String id = id(algorithm, key, limit, windowSeconds);
+        if (entries.size() >= maxEntries && !entries.containsKey(id)) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long windowMs = windowSeconds * 1000L;
+        entries.compute(id, (k, entry) -> {
+            if (entry == null) {
+                entry = new Entry(algorithm, key, limit, windowSeconds, now);
+            } else if (now - entry.windowStart >= windowMs) {
+                entry.count = 0;
+                entry.windowStart = now;
+            }
+            entry.count += cost;
+            entry.lastAt = now;
+            return entry;
+        });
+    }
+
+    /**
+     * Remove and return everything recorded so far.
+     */
+    public List<Delta> drain() {
+        List<Delta> deltas = new ArrayList<>();
+        for (String id : entries.keySet()) {
+            // Removed atomically w.r.t. record(), which then starts a new entry
+            Entry entry = entries.remove(id);
+            if (entry != null && entry.count > 0) {
+                deltas.add(entry.toDelta());
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Put deltas back after a failed flush.
+     */
+    public void restore(List<Delta> deltas) {
+        for (Delta delta : deltas) {
+            String id = id(delta.algorithm(), delta.key(), delta.limit(), delta.windowSeconds());
+            entries.merge(id, new Entry(delta), (current, restored) -> {
+                current.count += restored.count;
+                current.windowStart = Math.min(current.windowStart, restored.windowStart);
+                current.lastAt = Math.max(current.lastAt, restored.lastAt);
+                return current;
+            });
+        }
+    }
+
+    private static String id(String algorithm, String key, int limit, int windowSeconds) {
+        return algorithm + '\u0000' + key + '\u0000' + limit + '\u0000' + windowSeconds;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Admitted cost for one key, last admitted at lastAt (epoch ms).
+     */
+    public record Delta(String algorithm, String key, int limit, int windowSeconds, long count, long lastAt) {}
+
+    // Mutated only inside ConcurrentHashMap.compute/merge for its key
+    private static final class Entry {
+        final String algorithm;
+        final String key;
+        final int limit;
+        final int windowSeconds;
+        long count;
+        long windowStart;
+        long lastAt;
+
+        Entry(String algorithm, String key, int limit, int windowSeconds, long now) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.limit = limit;
+            this.windowSeconds = windowSeconds;
+            this.windowStart = now;
+            this.lastAt = now;
+        }
+
+        Entry(Delta delta) {
+            this(delta.algorithm(), delta.key(), delta.limit(), delta.windowSeconds(), delta.lastAt());
+            this.count = delta.count();
+        }
+
+        Delta toDelta() {
+            return new Delta(algorithm, key, limit, windowSeconds, count, lastAt);
+        }
+    }
+}
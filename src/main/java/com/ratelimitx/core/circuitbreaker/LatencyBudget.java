@@ -0,0 +1,118 @@
+package com.ratelimitx.core.circuitbreaker;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Deadline for a single Redis check.
+ *
+ * The check is sent through the reactive (non-blocking) Redis client and
+ * the caller waits at most ratelimit.latency-budget.ms; past that it gets
+ * a LatencyBudgetExceededException, which the circuit breaker counts as a
+ * failure and answers from the local fallback. No thread is handed the
+ * check or left waiting on it: the script still runs and its result is
+ * applied to the shared state when it arrives (bounded by
+ * spring.data.redis.timeout), it just no longer decides this request.
+ * Such late results are counted.
+ */
+@Component
+public class LatencyBudget {
+
+    @Value("${ratelimit.latency-budget.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ratelimit.latency-budget.ms:50}")
+    private long budgetMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter exceeded;
+    private Counter lateCompleted;
+    private Counter lateFailed;
+
+    @PostConstruct
+    public void init() {
+        exceeded = Counter.builder("ratelimit.latency.budget.exceeded")
+                .description("Redis checks answered locally because they ran past the budget")
+                .register(meterRegistry);
+        lateCompleted = lateCounter("completed");
+        lateFailed = lateCounter("failed");
+    }
+
+    private Counter lateCounter(String outcome) {
+        return Counter.builder("ratelimit.latency.budget.late")
+                .description("Redis checks that finished after their budget was exceeded")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Blocking form: the blocking check when the budget is disabled,
+     * otherwise the reactive one, waited on for at most the budget.
+     */
+    public <T> T call(Supplier<T> operation, Supplier<Mono<T>> reactiveOperation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        return apply(reactiveOperation.get()).block();
+    }
+
+    /**
+     * Reactive form of call(): the publisher is subscribed once and keeps
+     * running past the budget, only this subscriber stops waiting for it.
+     */
+    public <T> Mono<T> apply(Mono<T> operation) {
+        if (!enabled) {
+            return operation;
+        }
+
+        return Mono.defer(() -> {
+            CompletableFuture<T> future = operation.toFuture();
+            return Mono.fromFuture(future, true)
+                    .timeout(Duration.ofMillis(budgetMs), Mono.error(() -> exceeded(future)));
+        });
+    }
+
+    private LatencyBudgetExceededException exceeded(CompletableFuture<?> future) {
+        exceeded.increment();
+        future.whenComplete((result, error) -> (error == null ? lateCompleted : lateFailed).increment());
+        return new LatencyBudgetExceededException(budgetMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    public java.util.Map<String, Object> getStatus() {
+        java.util.Map<String, Object> status = new java.util.HashMap<>();
+        status.put("enabled", enabled);
+        status.put("budgetMs", budgetMs);
+        status.put("exceeded", (long) exceeded.count());
+        status.put("lateCompleted", (long) lateCompleted.count());
+        status.put("lateFailed", (long) lateFailed.count());
+        return status;
+    }
+
+    public static class LatencyBudgetExceededException extends RuntimeException {
+
+        public LatencyBudgetExceededException(long budgetMs) {
+            super("Redis check exceeded its " + budgetMs + " ms budget");
+        }
+    }
+}
@@ -1,75 +1,468 @@
 package com.ratelimitx.core.circuitbreaker;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.ratelimitx.core.model.RateLimitResult;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 
+/**
+ * In-process limiter used while Redis is unavailable.
+ *
+ * Each user's state is packed into one AtomicLong, so a check is a single
+ * compare-and-set: no separate reset, no check-then-increment. Layouts
+ * (times in ms since limiter start):
+ *   FIXED    [dead:1][window start:42][count:21]
+ *   SLIDING  [dead:1][window id:21][previous count:21][current count:21]
+ *   GCRA     [dead:1][theoretical arrival time:63]
+ * GCRA also serves token buckets (same admission for capacity = burst,
+ * refill rate = 1 / emission interval).
+ *
+ * Idle users are reclaimed by a timing wheel: a new entry is filed under a
+ * tick; when the sweeper reaches it, the entry is either re-filed under the
+ * tick its state expires, or marked dead (by CAS, so a racing check retries
+ * on a fresh entry) and removed. The check path never touches the wheel.
+ * The sweeper runs on its own thread, so jobs blocked on Redis cannot hold
+ * it up; if it still falls behind, entries filed under skipped ticks are
+ * handled as due when their slot comes round.
+ *
+ * Memory is bounded by ratelimit.local.max-entries. Users beyond that share
+ * a fixed set of striped counters: a fixed window of the caller's own
+ * window length, which can only under-admit.
+ *
+ * Limits are multiplied by this node's share of the cluster (set by
+ * ClusterMembership), so N nodes in fallback admit about one limit in
+ * total rather than N.
+ */
+@Component
+public class LocalRateLimiter {
 
+    private static final Logger logger = LoggerFactory.getLogger(LocalRateLimiter.class);
 
+    private static final int DEFAULT_MAX_REQUESTS = 10;
+    private static final int WINDOW_SIZE_MS = 60000;
 
+    private static final int COUNT_BITS = 21;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long DEAD = Long.MIN_VALUE;
 
+    private static final int WINDOW_ID_BITS = 21;
+    private static final long WINDOW_ID_MASK = (1L << WINDOW_ID_BITS) - 1;
 
+    // Expiries further out than the wheel spans are re-filed when reached
+    private static final long WHEEL_TICK_MS = 1000;
+    private static final int WHEEL_SLOTS = 64;
 
+    private static final int OVERFLOW_STRIPES = 64;
 
+    @Value("${ratelimit.local.max-entries:100000}")
+    private int maxEntries = 100000;
 
-@Component
-public class LocalRateLimiter {
+    private final LongSupplier clock;
+    private final long epoch;
 
-    private final ConcurrentHashMap<String, RequestCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> counters = new ConcurrentHashMap<>();
 
-    private static final int DEFAULT_MAX_REQUESTS = 10;
-    private static final int WINDOW_SIZE_MS = 60000;
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<Entry>[] wheel = new ConcurrentLinkedQueue[WHEEL_SLOTS];
+    private long lastSweptTick;
+
+    private final Entry[] overflow = new Entry[OVERFLOW_STRIPES];
+    private final AtomicLong overflowChecks = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private volatile double share = 1.0;
+
+    private ScheduledExecutorService sweeper;
+
+    private enum Kind { FIXED, SLIDING, GCRA }
+
+    public LocalRateLimiter() {
+        this(System::currentTimeMillis);
+    }
+
+    // Clock in epoch ms; tests drive time by hand
+    LocalRateLimiter(LongSupplier clock) {
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        for (int i = 0; i < OVERFLOW_STRIPES; i++) {
+            overflow[i] = new Entry(null, Kind.FIXED, 0, pack(0, 0));
+        }
+        lastSweptTick = 0;
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("local-limiter-sweep").daemon().factory());
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                // A thrown exception would cancel the schedule
+                logger.warn("Local limiter sweep failed: {}", e.getMessage());
+            }
+        }, WHEEL_TICK_MS, WHEEL_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
 
     public RateLimitResult checkRateLimit(String userId){
         return isAllowed(userId, DEFAULT_MAX_REQUESTS);
     }
 
     public RateLimitResult isAllowed(String userId, int maxRequests){
-        RequestCounter counter  = counters.computeIfAbsent(userId,
-        k -> new RequestCounter(System.currentTimeMillis()));
+        return isAllowed(userId, maxRequests, WINDOW_SIZE_MS);
+    }
 
-        long now = System.currentTimeMillis();
-        if(now - counter.windowStart > WINDOW_SIZE_MS)  counter.reset(now);
+    /**
+     * Fixed window of windowMs, the in-process counterpart of the
+     * fixed-window and token-lease checks.
+     */
+    public RateLimitResult isAllowed(String userId, int maxRequests, long windowMs) {
+        maxRequests = shareOf(maxRequests);
+        int max = (int) Math.min(maxRequests, COUNT_MASK);
+        if (max <= 0 || windowMs <= 0) {
+            return new RateLimitResult(false, maxRequests, 0, windowMs);
+        }
 
-        int currentCount = counter.count.get();
+        while (true) {
+            long now = now();
+            Entry entry = lookup(userId, Kind.FIXED, windowMs, now);
+            RateLimitResult result = tryAcquireFixed(entry, now, max, maxRequests, windowMs);
+            if (result != null) {
+                return result;
+            }
+            // Swept between lookup and CAS; start over on a fresh entry
+            counters.remove(userId, entry);
+        }
+    }
 
-        if(currentCount < maxRequests){
-            counter.count.incrementAndGet();
-            int remaining = maxRequests - currentCount -1;
-            long resetTime = WINDOW_SIZE_MS - (now - counter.windowStart);
+    /**
+     * Sliding window counter over windows aligned to windowSeconds, the
+     * in-process counterpart of SlidingWindowService.
+     */
+    public RateLimitResult isAllowedSliding(String userId, int maxRequests, int windowSeconds) {
+        maxRequests = shareOf(maxRequests);
+        int max = (int) Math.min(maxRequests, COUNT_MASK);
+        long windowMs = windowSeconds * 1000L;
+        if (max <= 0 || windowMs <= 0) {
+            return new RateLimitResult(false, maxRequests, 0, windowMs);
+        }
 
-            return new RateLimitResult(true, maxRequests, remaining, resetTime);
-        }else{
-            long resetTime = WINDOW_SIZE_MS - (now - counter.windowStart);
-            return new RateLimitResult(false, maxRequests, 0, resetTime);
+        while (true) {
+            long now = now();
+            Entry entry = lookup(userId, Kind.SLIDING, windowMs, now);
+            if (entry.key == null) {
+                // Over the memory budget: shared fixed-window stripe
+                return tryAcquireFixed(entry, now, max, maxRequests, windowMs);
+            }
+            RateLimitResult result = tryAcquireSliding(entry, now, max, maxRequests, windowMs);
+            if (result != null) {
+                return result;
+            }
+            counters.remove(userId, entry);
         }
     }
 
+    /**
+     * GCRA allowing limit requests per windowMs (bursts up to limit), the
+     * in-process counterpart of GcraService. A token bucket of capacity C
+     * refilling r tokens/s is isAllowedGcra(user, C, C * 1000 / r).
+     */
+    public RateLimitResult isAllowedGcra(String userId, int limit, long windowMs) {
+        return isAllowedGcra(userId, limit, windowMs, 1);
+    }
+
+    public RateLimitResult isAllowedGcra(String userId, int limit, long windowMs, int cost) {
+        limit = shareOf(limit);
+        if (limit <= 0 || windowMs <= 0) {
+            return new RateLimitResult(false, limit, 0, windowMs);
+        }
+
+        while (true) {
+            long now = now();
+            Entry entry = lookup(userId, Kind.GCRA, 0, now);
+            if (entry.key == null) {
+                return tryAcquireFixed(entry, now, (int) Math.min(limit, COUNT_MASK), limit, windowMs);
+            }
+            RateLimitResult result = tryAcquireGcra(entry, now, limit, windowMs, cost);
+            if (result != null) {
+                return result;
+            }
+            counters.remove(userId, entry);
+        }
+    }
+
+    /**
+     * Advance the timing wheel, reclaiming entries whose window has ended.
+     */
+    public void sweep() {
+        long now = now();
+        long currentTick = now / WHEEL_TICK_MS;
+
+        long from = Math.max(lastSweptTick + 1, currentTick - WHEEL_SLOTS + 1);
+        for (long tick = from; tick <= currentTick; tick++) {
+            ConcurrentLinkedQueue<Entry> slot = wheel[(int) (tick % WHEEL_SLOTS)];
+            Entry entry;
+            while ((entry = slot.poll()) != null) {
+                if (entry.scheduledTick > tick) {
+                    continue; // stale copy, the entry was re-filed to a later tick
+                }
+                // Due now, or filed under a tick a lagging sweep skipped
+                long state = entry.state.get();
+                if (state == DEAD) {
+                    continue;
+                }
+                long expiresAt = expiresAt(entry, state, now);
+                if (expiresAt > now) {
+                    schedule(entry, expiresAt, currentTick);
+                    continue;
+                }
+                if (entry.state.compareAndSet(state, DEAD)) {
+                    counters.remove(entry.key, entry);
+                    evicted.incrementAndGet();
+                } else {
+                    // Used concurrently; look again next tick
+                    schedule(entry, now + WHEEL_TICK_MS, currentTick);
+                }
+            }
+        }
+        lastSweptTick = currentTick;
+    }
+
     public void clear() {
         counters.clear();
+        for (ConcurrentLinkedQueue<Entry> slot : wheel) {
+            slot.clear();
+        }
+        for (Entry entry : overflow) {
+            entry.state.set(pack(0, 0));
+        }
+    }
+
+    /**
+     * Fraction (0, 1] of every limit this node enforces on its own.
+     */
+    public void setShare(double share) {
+        this.share = Math.min(1.0, Math.max(0.0, share));
+    }
+
+    public double getShare() {
+        return share;
+    }
+
+    // At least one request, so a small limit split many ways is not zero
+    private int shareOf(int limit) {
+        double current = share;
+        if (current >= 1.0 || limit <= 0) {
+            return limit;
+        }
+        return Math.max(1, (int) (limit * current));
     }
 
     public int getActiveUsers() {
         return counters.size();
     }
 
-    private static class RequestCounter {
-        volatile long windowStart;
-        final AtomicInteger count;
+    public long getOverflowChecks() {
+        return overflowChecks.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
 
-        RequestCounter(long windowStart) {
-            this.windowStart = windowStart;
-            this.count = new AtomicInteger(0);
+    private Entry lookup(String userId, Kind kind, long param, long now) {
+        while (true) {
+            Entry entry = counters.get(userId);
+            if (entry == null) {
+                if (counters.size() >= maxEntries) {
+                    overflowChecks.incrementAndGet();
+                    return overflow[(userId.hashCode() & 0x7fffffff) % OVERFLOW_STRIPES];
+                }
+                entry = counters.computeIfAbsent(userId, k -> {
+                    Entry created = new Entry(k, kind, param, initialState(kind, param, now));
+                    schedule(created, now + WHEEL_TICK_MS, now / WHEEL_TICK_MS);
+                    return created;
+                });
+            }
+            if (entry.kind == kind && entry.param == param) {
+                return entry;
+            }
+            // Algorithm or window changed: the old state means nothing now
+            long state = entry.state.get();
+            if (state != DEAD) {
+                entry.state.compareAndSet(state, DEAD);
+            }
+            counters.remove(userId, entry);
         }
+    }
+
+    private static long initialState(Kind kind, long windowMs, long now) {
+        return switch (kind) {
+            case FIXED -> pack(now, 0);
+            case SLIDING -> packSliding(now / windowMs, 0, 0);
+            case GCRA -> now;
+        };
+    }
+
+    // Returns null if the entry was marked dead by the sweeper
+    private RateLimitResult tryAcquireFixed(Entry entry, long now, int max, int reportedLimit, long windowMs) {
+        while (true) {
+            long state = entry.state.get();
+            if (state == DEAD) {
+                return null;
+            }
+            long start = start(state);
+            int count = (int) (state & COUNT_MASK);
+
+            if (now - start >= windowMs) {
+                // Window over: open a new one with this request in it
+                if (entry.state.compareAndSet(state, pack(now, 1))) {
+                    return new RateLimitResult(true, reportedLimit, max - 1, windowMs);
+                }
+                continue;
+            }
+
+            long resetTime = windowMs - Math.max(0, now - start);
+            if (count >= max) {
+                return new RateLimitResult(false, reportedLimit, 0, resetTime);
+            }
+            if (entry.state.compareAndSet(state, pack(start, count + 1))) {
+                return new RateLimitResult(true, reportedLimit, max - count - 1, resetTime);
+            }
+        }
+    }
+
+    private RateLimitResult tryAcquireSliding(Entry entry, long now, int max, int reportedLimit, long windowMs) {
+        long windowId = (now / windowMs) & WINDOW_ID_MASK;
+        long elapsed = now % windowMs;
+        long resetTime = windowMs - elapsed;
+
+        while (true) {
+            long state = entry.state.get();
+            if (state == DEAD) {
+                return null;
+            }
+            long stateWindow = state >>> (COUNT_BITS * 2);
+            long previous = (state >>> COUNT_BITS) & COUNT_MASK;
+            long current = state & COUNT_MASK;
+
+            long behind = (windowId - stateWindow) & WINDOW_ID_MASK;
+            if (behind == 1) {
+                previous = current;
+                current = 0;
+            } else if (behind > 1) {
+                previous = 0;
+                current = 0;
+            }
+
+            double weight = (windowMs - elapsed) / (double) windowMs;
+            int weighted = (int) Math.floor(previous * weight + current);
+            if (weighted >= max) {
+                return new RateLimitResult(false, reportedLimit, 0, resetTime);
+            }
+            if (entry.state.compareAndSet(state, packSliding(windowId, previous, current + 1))) {
+                return new RateLimitResult(true, reportedLimit, max - weighted - 1, resetTime);
+            }
+        }
+    }
+
+    private RateLimitResult tryAcquireGcra(Entry entry, long now, int limit, long windowMs, int cost) {
+        double emissionMs = windowMs / (double) limit;
+
+        while (true) {
+            long tat = entry.state.get();
+            if (tat == DEAD) {
+                return null;
+            }
+            long newTat = (long) Math.ceil(Math.max(tat, now) + emissionMs * cost);
+            long allowAt = newTat - windowMs;
+            if (now < allowAt) {
+                return new RateLimitResult(false, limit, 0, allowAt - now);
+            }
+            if (entry.state.compareAndSet(tat, newTat)) {
+                int remaining = (int) Math.floor((windowMs - (newTat - now)) / emissionMs);
+                return new RateLimitResult(true, limit, Math.max(0, remaining), newTat - now);
+            }
+        }
+    }
+
+    // When the entry's state stops mattering (it would read as empty)
+    private static long expiresAt(Entry entry, long state, long now) {
+        return switch (entry.kind) {
+            case FIXED -> start(state) + entry.param;
+            case SLIDING -> {
+                long windowMs = entry.param;
+                long behind = ((now / windowMs) - (state >>> (COUNT_BITS * 2))) & WINDOW_ID_MASK;
+                // Previous count stops weighing once two windows have passed
+                yield (now / windowMs + 2 - behind) * windowMs;
+            }
+            case GCRA -> state;
+        };
+    }
+
+    private void schedule(Entry entry, long at, long currentTick) {
+        if (entry.key == null) {
+            return; // shared overflow stripes are never evicted
+        }
+        long tick = Math.min(at / WHEEL_TICK_MS + 1, currentTick + WHEEL_SLOTS - 1);
+        entry.scheduledTick = tick;
+        wheel[(int) (tick % WHEEL_SLOTS)].add(entry);
+    }
+
+    private long now() {
+        return Math.max(0, clock.getAsLong() - epoch);
+    }
+
+    private static long pack(long start, long count) {
+        return (start << COUNT_BITS) | count;
+    }
+
+    private static long packSliding(long windowId, long previous, long current) {
+        return ((windowId & WINDOW_ID_MASK) << (COUNT_BITS * 2))
+                | (Math.min(previous, COUNT_MASK) << COUNT_BITS)
+                | Math.min(current, COUNT_MASK);
+    }
+
+    private static long start(long state) {
+        return state >>> COUNT_BITS;
+    }
+
+    private static final class Entry {
+        final String key;
+        final Kind kind;
+        final long param;
+        final AtomicLong state;
+        volatile long scheduledTick;
 
-        void reset(long newWindowStart) {
-            this.windowStart = newWindowStart;
-            this.count.set(0);
+        Entry(String key, Kind kind, long param, long initialState) {
+            this.key = key;
+            this.kind = kind;
+            this.param = param;
+            this.state = new AtomicLong(initialState);
         }
     }
 }
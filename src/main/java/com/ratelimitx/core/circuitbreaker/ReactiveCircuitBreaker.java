@@ -0,0 +1,58 @@
+package com.ratelimitx.core.circuitbreaker;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+
+
+/**
+ * CircuitBreaker for publishers.
+ *
+ * Shares the state of the blocking CircuitBreaker, so the admin endpoints,
+ * metrics and fallback mode are the same whichever path a request took.
+ * The operation is only subscribed to when the circuit permits a call; its
+ * outcome and latency are recorded when it completes, and any error
+ * switches to the (synchronous, in-memory) fallback.
+ */
+@Component
+public class ReactiveCircuitBreaker {
+
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> operation, Supplier<T> fallback) {
+        return execute(circuitBreaker, operation, fallback);
+    }
+
+    /**
+     * Same, on the given breaker (e.g. a Redis shard's).
+     */
+    public <T> Mono<T> execute(CircuitBreaker breaker, Supplier<Mono<T>> operation, Supplier<T> fallback) {
+        return execute(breaker, operation, cause -> fallback.get());
+    }
+
+    /**
+     * Same, but the fallback gets the operation's error, or null when the
+     * circuit refused the call and Redis was never tried.
+     */
+    public <T> Mono<T> execute(CircuitBreaker breaker, Supplier<Mono<T>> operation, Function<Throwable, T> fallback) {
+        return Mono.defer(() -> {
+            CircuitBreakerState admittedIn = breaker.tryAcquirePermission();
+            if (admittedIn == null) {
+                return Mono.fromSupplier(() -> fallback.apply(null));
+            }
+            long start = System.nanoTime();
+            return Mono.defer(operation)
+                    .doOnSuccess(result -> breaker.recordSuccess(admittedIn, System.nanoTime() - start))
+                    .doOnCancel(() -> breaker.releasePermission(admittedIn))
+                    .onErrorResume(e -> {
+                        breaker.recordFailure(admittedIn, System.nanoTime() - start);
+                        return Mono.fromSupplier(() -> fallback.apply(e));
+                    });
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.ratelimitx.core.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Consistent-hash ring with virtual nodes.
+ *
+ * Each node is placed at {@code virtualNodes} points derived from its name,
+ * and a key belongs to the first point at or after its own hash. Adding or
+ * removing a node only moves the keys between its points and their
+ * predecessors, about 1/N of the keyspace, and since points depend only on
+ * names, every process builds the same ring from the same list.
+ */
+class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    ConsistentHashRing(List<String> names, List<T> nodes, int virtualNodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.put(hash(names.get(i) + "#" + v), nodes.get(i));
+            }
+        }
+    }
+
+    T nodeFor(String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // 64-bit FNV-1a, then the MurmurHash3 finalizer to spread nearby keys
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,9 +1,7 @@
 package com.ratelimitx.core.config;
 
 import io.micrometer.core.aop.TimedAspect;
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
@@ -17,6 +15,9 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
  * - Request counters (total, denied)
  * - Rate limit check timers
  * - Circuit breaker state gauges
+ * 
+ * The rate limit meters themselves are registered (tagged, cached) by
+ * PrometheusMetricsService.
  */
 @Configuration
 @EnableAspectJAutoProxy
@@ -31,39 +32,6 @@ public class MetricsConfig {
         return registry.config();
     }
     
-    /**
-     * Counter for total rate limit requests
-     * Tags: user_id, allowed (true/false), algorithm
-     */
-    @Bean
-    public Counter ratelimitRequestsCounter(MeterRegistry registry) {
-        return Counter.builder("ratelimit.requests.total")
-                .description("Total rate limit check requests")
-                .register(registry);
-    }
-    
-    /**
-     * Counter for denied rate limit requests
-     * Tags: user_id, reason
-     */
-    @Bean
-    public Counter ratelimitDeniedCounter(MeterRegistry registry) {
-        return Counter.builder("ratelimit.requests.denied")
-                .description("Total denied rate limit requests")
-                .register(registry);
-    }
-    
-    /**
-     * Timer for rate limit check duration
-     * Tags: algorithm, result (allowed/denied)
-     */
-    @Bean
-    public Timer ratelimitCheckTimer(MeterRegistry registry) {
-        return Timer.builder("ratelimit.check.duration")
-                .description("Time taken to perform rate limit check")
-                .register(registry);
-    }
-    
     /**
      * Enable @Timed annotation support for methods
      */
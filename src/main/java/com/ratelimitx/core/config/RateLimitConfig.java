@@ -15,6 +15,11 @@ public class RateLimitConfig {
     private int maxRequests = 10;
     private int windowSizeSeconds = 60;
 
+    // Token lease: how long a node may hold reserved permits, and the
+    // largest share of a user's limit one lease may take
+    private long leaseDurationMs = 1000;
+    private double leaseMaxChunkFraction = 0.1;
+
     public String getAlgorithm() {
         return algorithm;
     }
@@ -39,4 +44,10 @@ public class RateLimitConfig {
 
     public int getWindowSizeSeconds() { return windowSizeSeconds; }
     public void setWindowSizeSeconds(int windowSizeSeconds) { this.windowSizeSeconds = windowSizeSeconds; }
+
+    public long getLeaseDurationMs() { return leaseDurationMs; }
+    public void setLeaseDurationMs(long leaseDurationMs) { this.leaseDurationMs = leaseDurationMs; }
+
+    public double getLeaseMaxChunkFraction() { return leaseMaxChunkFraction; }
+    public void setLeaseMaxChunkFraction(double leaseMaxChunkFraction) { this.leaseMaxChunkFraction = leaseMaxChunkFraction; }
 }
@@ -0,0 +1,134 @@
+package com.ratelimitx.core.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Names of every limiter key, in one place.
+ *
+ * Standalone (default) keeps the original layout, e.g. "bucket:alice".
+ * With ratelimit.redis.cluster-mode=true the user part becomes a hash tag,
+ * "bucket:{alice}", so all keys of one user (fixed window counter and its
+ * limit, lease counters, sliding window hash) map to the same slot and a
+ * script never touches two slots. Keys that are checked together but do
+ * not belong to one user share a group tag instead ("{hl}:user:alice",
+ * "{nodes}:heartbeat").
+ *
+ * Batch scripts take many users at once; slotGroups() splits their keys
+ * into per-slot invocations.
+ */
+@Component
+public class RedisKeys {
+
+    @Value("${ratelimit.redis.cluster-mode:false}")
+    private boolean clusterMode;
+
+    public boolean isClusterMode() {
+        return clusterMode;
+    }
+
+    /**
+     * Per-user key, "prefix:user" or "prefix:{user}".
+     */
+    public String user(String prefix, String userId) {
+        return clusterMode
+                ? prefix + ":{" + userId + "}"
+                : prefix + ":" + userId;
+    }
+
+    /**
+     * Key shared by a group that scripts use together, "group:name" or "{group}:name".
+     */
+    public String group(String group, String name) {
+        return clusterMode
+                ? "{" + group + "}:" + name
+                : group + ":" + name;
+    }
+
+    public String fixedWindow(String userId, long windowId) {
+        return user("rate", userId) + ":" + windowId;
+    }
+
+    /**
+     * Hash holding the user's custom limit (field = user id). One shared hash
+     * standalone; in cluster mode one per user, next to its counters.
+     */
+    public String userLimits(String userId) {
+        return clusterMode ? user("user-limits", userId) : "user-limits";
+    }
+
+    public String bucket(String userId) {
+        return user("bucket", userId);
+    }
+
+    public String sliding(String userId) {
+        return user("sliding", userId);
+    }
+
+    public String gcra(String key) {
+        return user("gcra", key);
+    }
+
+    /**
+     * GCRA state of a bulk-check key (POST /api/check/batch). Kept apart
+     * from gcra(), so a caller-chosen key can never be a user's limiter.
+     */
+    public String batch(String key) {
+        return user("batch", key);
+    }
+
+    public String lease(String userId, long windowId) {
+        return user("lease", userId) + ":" + windowId;
+    }
+
+    /**
+     * Hierarchical rule key. Every rule of a request is checked in one
+     * script and the global rule is in all of them, so in cluster mode they
+     * all live in the {hl} slot.
+     */
+    public String hierarchy(String rule) {
+        return group("hl", rule);
+    }
+
+    /**
+     * User id of a per-user key, e.g. "alice" for "rate:alice:123" or "rate:{alice}:123".
+     */
+    public String userOf(String key) {
+        int open = key.indexOf('{');
+        if (open >= 0) {
+            int close = key.indexOf('}', open + 1);
+            if (close > open + 1) {
+                return key.substring(open + 1, close);
+            }
+        }
+        String[] parts = key.split(":");
+        return parts.length >= 2 ? parts[1] : null;
+    }
+
+    /**
+     * Indices of keys grouped by cluster slot, in first-seen order. Standalone
+     * everything is one group.
+     */
+    public List<List<Integer>> slotGroups(List<String> keys) {
+        if (!clusterMode) {
+            List<Integer> all = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                all.add(i);
+            }
+            return List.of(all);
+        }
+
+        Map<Integer, List<Integer>> bySlot = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            bySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(keys.get(i)), slot -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(bySlot.values());
+    }
+}
@@ -0,0 +1,206 @@
+package com.ratelimitx.core.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.circuitbreaker.CircuitBreaker;
+import com.ratelimitx.core.circuitbreaker.CircuitBreakerState;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Where the limiter keys of a user live.
+ *
+ * By default there is one shard: the spring.data.redis connection and the
+ * CircuitBreaker bean. With ratelimit.redis.shards set to a list of
+ * independent Redis instances (host:port,...), each user id is routed
+ * through a consistent-hash ring to one of them, so every key of a user
+ * (and every script over them) stays on one instance. Each shard has its
+ * own connection and circuit breaker: a shard that goes down only sends
+ * its own users to the local fallback. Shards use the credentials,
+ * database and SSL setting of spring.data.redis. Sharding and
+ * ratelimit.redis.cluster-mode are exclusive; startup fails if both are set.
+ *
+ * Hierarchical rules are checked together and always include the global
+ * rule, so they are routed as one group ("hl"), like the {hl} hash tag in
+ * cluster mode. Data that is not per user (metrics, revocations) stays on
+ * the spring.data.redis connection.
+ */
+@Component
+public class RedisShards {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisShards.class);
+
+    public static final String HIERARCHY_ROUTE = "hl";
+
+    @Value("${ratelimit.redis.shards:}")
+    private List<String> endpoints;
+
+    @Value("${ratelimit.redis.shard-virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${spring.data.redis.timeout:2s}")
+    private Duration commandTimeout;
+
+    @Value("${spring.data.redis.username:}")
+    private String username;
+
+    @Value("${spring.data.redis.password:}")
+    private String password;
+
+    @Value("${spring.data.redis.database:0}")
+    private int database;
+
+    @Value("${spring.data.redis.ssl.enabled:false}")
+    private boolean ssl;
+
+    @Value("${ratelimit.redis.cluster-mode:false}")
+    private boolean clusterMode;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<LettuceConnectionFactory> factories = new ArrayList<>();
+    private ConsistentHashRing<Shard> ring;
+
+    @PostConstruct
+    public void init() {
+        List<String> names = new ArrayList<>();
+        if (endpoints != null) {
+            for (String endpoint : endpoints) {
+                if (!endpoint.isBlank()) {
+                    names.add(endpoint.trim());
+                }
+            }
+        }
+
+        if (names.isEmpty()) {
+            shards.add(new Shard("default", redisTemplate, reactiveRedisTemplate, circuitBreaker));
+            return;
+        }
+
+        if (clusterMode) {
+            throw new IllegalStateException(
+                    "ratelimit.redis.shards cannot be combined with ratelimit.redis.cluster-mode");
+        }
+
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .commandTimeout(commandTimeout);
+        if (ssl) {
+            builder.useSsl();
+        }
+        LettuceClientConfiguration clientConfig = builder.build();
+        for (String name : names) {
+            int colon = name.lastIndexOf(':');
+            String host = colon > 0 ? name.substring(0, colon) : name;
+            int port = colon > 0 ? Integer.parseInt(name.substring(colon + 1)) : 6379;
+
+            RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(host, port);
+            standalone.setDatabase(database);
+            if (!username.isBlank()) {
+                standalone.setUsername(username);
+            }
+            if (!password.isEmpty()) {
+                standalone.setPassword(RedisPassword.of(password));
+            }
+
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(standalone, clientConfig);
+            factory.afterPropertiesSet();
+            factory.start();
+            factories.add(factory);
+
+            shards.add(new Shard(name,
+                    new StringRedisTemplate(factory),
+                    new ReactiveStringRedisTemplate(factory),
+                    circuitBreaker.newInstance(name)));
+        }
+        ring = new ConsistentHashRing<>(names, shards, virtualNodes);
+        logger.info("Limiter keys sharded over {} Redis instances: {}", shards.size(), names);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (LettuceConnectionFactory factory : factories) {
+            factory.destroy();
+        }
+    }
+
+    public boolean isSharded() {
+        return ring != null;
+    }
+
+    public List<Shard> shards() {
+        return shards;
+    }
+
+    /**
+     * Shard of a user id (or another routing key, e.g. HIERARCHY_ROUTE).
+     */
+    public Shard shardFor(String routingKey) {
+        return ring == null ? shards.get(0) : ring.nodeFor(routingKey);
+    }
+
+    public StringRedisTemplate template(String routingKey) {
+        return shardFor(routingKey).template();
+    }
+
+    public ReactiveStringRedisTemplate reactiveTemplate(String routingKey) {
+        return shardFor(routingKey).reactiveTemplate();
+    }
+
+    /**
+     * Split items by shard, keeping their order within each shard.
+     */
+    public <T> Map<Shard, List<T>> groupByShard(List<T> items, Function<T, String> routingKey) {
+        Map<Shard, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardFor(routingKey.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return byShard;
+    }
+
+    /**
+     * OPEN if any shard is open, else HALF_OPEN if any is probing, else CLOSED.
+     */
+    public CircuitBreakerState worstState() {
+        CircuitBreakerState worst = CircuitBreakerState.CLOSED;
+        for (Shard shard : shards) {
+            CircuitBreakerState state = shard.breaker().getState();
+            if (state == CircuitBreakerState.OPEN) {
+                return state;
+            }
+            if (state == CircuitBreakerState.HALF_OPEN) {
+                worst = state;
+            }
+        }
+        return worst;
+    }
+
+    public record Shard(String name, StringRedisTemplate template,
+                        ReactiveStringRedisTemplate reactiveTemplate, CircuitBreaker breaker) {}
+}
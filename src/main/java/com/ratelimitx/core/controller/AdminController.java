@@ -2,12 +2,14 @@ package com.ratelimitx.core.controller;
 
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -18,13 +20,25 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.ratelimitx.core.circuitbreaker.CircuitBreaker;
+import com.ratelimitx.core.algorithm.RateLimitAlgorithmRegistry;
+import com.ratelimitx.core.circuitbreaker.LatencyBudget;
 import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
 import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.entity.Role;
 import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.security.TokenRevocationService;
+import com.ratelimitx.core.service.ActiveUserTracker;
+import com.ratelimitx.core.service.ClusterMembership;
+import com.ratelimitx.core.service.FallbackReconciler;
+import com.ratelimitx.core.service.GcraService;
+import com.ratelimitx.core.service.KeyPurgeService;
+import com.ratelimitx.core.service.LimitResolver;
 import com.ratelimitx.core.service.ResilientRateLimiter;
 import com.ratelimitx.core.service.SlidingWindowService;
 import com.ratelimitx.core.service.TokenBucketService;
+import com.ratelimitx.core.service.TokenLeaseService;
 
 
 
@@ -38,18 +52,39 @@ public class AdminController {
     @Autowired
     private StringRedisTemplate redis;
 
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    private KeyPurgeService keyPurgeService;
+
+    @Autowired
+    private LimitResolver limitResolver;
+
+    @Autowired
+    private ActiveUserTracker activeUserTracker;
+
     @Autowired
     private TokenBucketService tokenBucketService;
 
     @Autowired
     private SlidingWindowService slidingWindowService;
 
+    @Autowired
+    private TokenLeaseService tokenLeaseService;
+
+    @Autowired
+    private GcraService gcraService;
+
     @Autowired
     @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
     private RateLimitConfig config;
 
     @Autowired
-    private CircuitBreaker circuitBreaker;
+    private RedisShards redisShards;
+
+    @Autowired
+    private LatencyBudget latencyBudget;
 
     @Autowired
     private LocalRateLimiter localRateLimiter;
@@ -57,6 +92,18 @@ public class AdminController {
     @Autowired
     private ResilientRateLimiter resilientRateLimiter;
 
+    @Autowired
+    private FallbackReconciler fallbackReconciler;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private RateLimitAlgorithmRegistry algorithmRegistry;
+
     private static final long START_TIME = System.currentTimeMillis();
 
     // ==================== SYSTEM ENDPOINTS ====================
@@ -66,49 +113,12 @@ public class AdminController {
 
         Map<String, Object> stats = new HashMap<>();
 
-        // Count all rate limit keys across all algorithms
-        Set<String> rateLimitKeys = redis.keys("rate:*");
-        Set<String> bucketKeys = redis.keys("bucket:*");
-        Set<String> slidingKeys = redis.keys("sliding:*");
-
-        Set<String> uniqueUsers = new HashSet<>();
-
-        // Extract users from fixed window keys
-        if (rateLimitKeys != null) {
-            for (String key : rateLimitKeys) {
-                String[] parts = key.split(":");
-                if (parts.length >= 2) {
-                    uniqueUsers.add(parts[1]);
-                }
-            }
-        }
-
-        // Extract users from bucket keys
-        if (bucketKeys != null) {
-            for (String key : bucketKeys) {
-                String[] parts = key.split(":");
-                if (parts.length >= 2) {
-                    uniqueUsers.add(parts[1]);
-                }
-            }
-        }
-
-        // Extract users from sliding window keys
-        if (slidingKeys != null) {
-            for (String key : slidingKeys) {
-                String[] parts = key.split(":");
-                if (parts.length >= 2) {
-                    uniqueUsers.add(parts[1]);
-                }
-            }
-        }
-
-        int totalKeys = (rateLimitKeys != null ? rateLimitKeys.size() : 0)
-                + (bucketKeys != null ? bucketKeys.size() : 0)
-                + (slidingKeys != null ? slidingKeys.size() : 0);
-
-        stats.put("activeUsers", uniqueUsers.size());
-        stats.put("totalActiveKeys", totalKeys);
+        // Maintained as requests happen (see ActiveUserTracker), no keyspace walk
+        Map<String, Long> activeKeys = activeUserTracker.getActiveUsersByAlgorithm();
+        stats.put("activeUsers", activeUserTracker.getActiveUsers());
+        stats.put("activeKeysByAlgorithm", activeKeys);
+        stats.put("totalActiveKeys", activeKeys.values().stream().mapToLong(Long::longValue).sum());
+        stats.put("limitCache", limitResolver.getStats());
         stats.put("activeAlgorithm", config.getAlgorithm());
 
         stats.put("uptimeSeconds", (System.currentTimeMillis() - START_TIME) / 1000);
@@ -148,9 +158,9 @@ public class AdminController {
         Map<String, Object> status = new HashMap<>();
 
         long currentMinute = System.currentTimeMillis() / 60000;
-        String key = "rate:" + userId + ":" + currentMinute;
+        String key = redisKeys.fixedWindow(userId, currentMinute);
 
-        String count = redis.opsForValue().get(key);
+        String count = redisShards.template(userId).opsForValue().get(key);
         int currentCount = count != null ? Integer.parseInt(count) : 0;
 
         int maxRequests = getUserLimit(userId);
@@ -203,6 +213,32 @@ public class AdminController {
         return status;
     }
 
+    // ==================== GCRA ENDPOINTS ====================
+
+    @GetMapping("/gcra/{userId}")
+    public Map<String, Object> getGcraStatus(@PathVariable String userId) {
+        RateLimitResult result = gcraService.getStatus(userId);
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("userId", userId);
+        status.put("algorithm", "gcra");
+        status.put("maxRequests", result.getLimit());
+        status.put("remainingRequests", result.getRemaining());
+        status.put("resetInMs", result.getResetTime());
+        status.put("isAllowed", result.isAllowed());
+
+        return status;
+    }
+
+    // ==================== TOKEN LEASE ENDPOINTS ====================
+
+    @GetMapping("/lease")
+    public Map<String, Object> getLeaseStats() {
+        Map<String, Object> stats = tokenLeaseService.getStats();
+        stats.put("algorithm", "token-lease");
+        return stats;
+    }
+
     // ==================== COMPARISON ENDPOINT ====================
 
     @GetMapping("/compare/{userId}")
@@ -212,8 +248,8 @@ public class AdminController {
         // Fixed Window Status
         Map<String, Object> fixedWindow = new HashMap<>();
         long currentMinute = System.currentTimeMillis() / 60000;
-        String key = "rate:" + userId + ":" + currentMinute;
-        String count = redis.opsForValue().get(key);
+        String key = redisKeys.fixedWindow(userId, currentMinute);
+        String count = redisShards.template(userId).opsForValue().get(key);
         int currentCount = count != null ? Integer.parseInt(count) : 0;
         int maxRequests = getUserLimit(userId);
         fixedWindow.put("currentRequests", currentCount);
@@ -237,12 +273,42 @@ public class AdminController {
         slidingWindow.put("remaining", slidingResult.getRemaining());
         comparison.put("slidingWindow", slidingWindow);
 
+        // GCRA Status
+        RateLimitResult gcraResult = gcraService.getStatus(userId);
+        Map<String, Object> gcra = new HashMap<>();
+        gcra.put("maxRequests", gcraResult.getLimit());
+        gcra.put("remaining", gcraResult.getRemaining());
+        gcra.put("resetInMs", gcraResult.getResetTime());
+        comparison.put("gcra", gcra);
+
         // Active algorithm
         comparison.put("activeAlgorithm", config.getAlgorithm());
 
         return comparison;
     }
 
+    // ==================== ALGORITHM SELECTION ====================
+
+    @PostMapping("/algorithm")
+    public Map<String, Object> setAlgorithm(@RequestBody Map<String, Object> request) {
+        String algorithm = (String) request.get("algorithm");
+
+        Map<String, Object> response = new HashMap<>();
+        if (algorithm == null || !algorithmRegistry.contains(algorithm)) {
+            response.put("status", "error");
+            response.put("message", "Unknown algorithm: " + algorithm);
+            response.put("available", algorithmRegistry.names());
+            return response;
+        }
+
+        config.setAlgorithm(algorithm);
+        resilientRateLimiter.reload();
+
+        response.put("status", "success");
+        response.put("activeAlgorithm", algorithm);
+        return response;
+    }
+
     // ==================== USER MANAGEMENT ENDPOINTS ====================
 
     @PostMapping("/limit")
@@ -250,7 +316,8 @@ public class AdminController {
         String userId = (String) request.get("userId");
         Integer limit = (Integer) request.get("limit");
 
-        redis.opsForHash().put("user-limits", userId, String.valueOf(limit));
+        // Postgres, then Redis, then every node's cache
+        limitResolver.setLimit(userId, limit);
 
         Map<String, Object> response = new HashMap<>();
         response.put("status", "success");
@@ -261,55 +328,122 @@ public class AdminController {
 
     @DeleteMapping("/reset/{userId}")
     public Map<String, Object> resetUser(@PathVariable String userId) {
+        long now = System.currentTimeMillis();
+        long minute = now / 60000;
+        long leaseWindow = now / (config.getWindowSizeSeconds() * 1000L);
+        String sliding = redisKeys.sliding(userId);
+
+        // The exact keys of every algorithm (windowed keys: current and previous
+        // window, older ones have expired), removed without blocking Redis
+        redisShards.template(userId).unlink(List.of(
+                redisKeys.fixedWindow(userId, minute),
+                redisKeys.fixedWindow(userId, minute - 1),
+                redisKeys.bucket(userId),
+                sliding,
+                sliding + ":current",
+                sliding + ":previous",
+                sliding + ":timestamp",
+                redisKeys.gcra(userId),
+                redisKeys.lease(userId, leaseWindow),
+                redisKeys.lease(userId, leaseWindow - 1)));
+
+        // The user's hierarchical limit key
+        redisShards.template(RedisShards.HIERARCHY_ROUTE).unlink(redisKeys.hierarchy("user:" + userId));
 
-        // Reset Fixed Window keys
-        Set<String> fixedWindowKeys = redis.keys("rate:" + userId + ":*");
-        if (fixedWindowKeys != null && !fixedWindowKeys.isEmpty()) {
-            redis.delete(fixedWindowKeys);
-        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("message", "Reset user: " + userId + " (all algorithms)");
+        return response;
+    }
 
-        // Reset Token Bucket keys
-        Set<String> bucketKeys = redis.keys("bucket:" + userId);
-        if (bucketKeys != null && !bucketKeys.isEmpty()) {
-            redis.delete(bucketKeys);
-        }
+    // ==================== BULK PURGE ENDPOINTS ====================
 
-        // Reset Sliding Window keys
-        Set<String> slidingKeys = redis.keys("sliding:" + userId + ":*");
-        if (slidingKeys != null && !slidingKeys.isEmpty()) {
-            redis.delete(slidingKeys);
+    /**
+     * Start a background purge of one algorithm's keys, a tenant's keys or
+     * the keys under a prefix: {"algorithm": "gcra"}, {"tenant": "acme"} or
+     * {"prefix": "bucket:test-"}.
+     */
+    @PostMapping("/purge")
+    public ResponseEntity<Map<String, Object>> startPurge(@RequestBody Map<String, String> request) {
+        try {
+            KeyPurgeService.PurgeJob job = keyPurgeService.start(
+                    request.get("algorithm"), request.get("tenant"), request.get("prefix"));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         }
+    }
+
+    @GetMapping("/purge")
+    public List<Map<String, Object>> listPurges() {
+        return keyPurgeService.list().stream().map(KeyPurgeService.PurgeJob::toMap).toList();
+    }
+
+    @GetMapping("/purge/{jobId}")
+    public ResponseEntity<Map<String, Object>> getPurge(@PathVariable String jobId) {
+        KeyPurgeService.PurgeJob job = keyPurgeService.get(jobId);
+        return job != null ? ResponseEntity.ok(job.toMap()) : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/purge/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelPurge(@PathVariable String jobId) {
+        KeyPurgeService.PurgeJob job = keyPurgeService.cancel(jobId);
+        return job != null ? ResponseEntity.ok(job.toMap()) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/revoke/{username}")
+    public Map<String, Object> revokeTokens(@PathVariable String username) {
+        tokenRevocationService.revokeUser(username);
 
         Map<String, Object> response = new HashMap<>();
         response.put("status", "success");
-        response.put("message", "Reset user: " + userId + " (all algorithms)");
+        response.put("message", "Revoked all tokens issued so far for: " + username);
         return response;
     }
 
     //==================== Circuit Breaer ENDPOINTS ====================
     @GetMapping("/circuit")
     public Map<String, Object> getCircuitBreakerStatus() {
-        Map<String, Object> status = circuitBreaker.getStatus();
+        Map<String, Object> status;
+        if (redisShards.isSharded()) {
+            Map<String, Object> shards = new LinkedHashMap<>();
+            for (RedisShards.Shard shard : redisShards.shards()) {
+                shards.put(shard.name(), shard.breaker().getStatus());
+            }
+            status = new HashMap<>();
+            status.put("state", redisShards.worstState().toString());
+            status.put("shards", shards);
+        } else {
+            status = redisShards.shards().get(0).breaker().getStatus();
+        }
         status.put("currentMode", resilientRateLimiter.getCurrentMode());
         status.put("localFallbackActiveUsers", localRateLimiter.getActiveUsers());
+        status.put("localFallbackOverflowChecks", localRateLimiter.getOverflowChecks());
+        status.put("localFallbackEvicted", localRateLimiter.getEvicted());
+        status.put("latencyBudget", latencyBudget.getStatus());
+        status.put("fallbackReconcile", fallbackReconciler.getStatus());
+        status.put("cluster", clusterMembership.getStatus());
         return status;
     }
 
     @PostMapping("/circuit/reset")
     public Map<String, Object> resetCircuitBreaker() {
-        circuitBreaker.reset();
+        for (RedisShards.Shard shard : redisShards.shards()) {
+            shard.breaker().reset();
+        }
 
         Map<String, Object> response = new HashMap<>();
         response.put("status", "success");
         response.put("message", "Circuit breaker reset to CLOSED state");
-        response.put("currentState", circuitBreaker.getState().toString());
+        response.put("currentState", redisShards.worstState().toString());
         return response;
     }
 
     // ==================== HELPER METHODS ====================
 
     private int getUserLimit(String userId) {
-        String customLimit = (String) redis.opsForHash().get("user-limits", userId);
-        return customLimit != null ? Integer.parseInt(customLimit) : 10;
+        return limitResolver.resolve(userId, Role.USER.getDefaultRateLimit());
     }
 }
\ No newline at end of file
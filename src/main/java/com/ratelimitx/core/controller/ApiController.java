@@ -1,103 +1,44 @@
 package com.ratelimitx.core.controller;
 
-import com.ratelimitx.core.entity.User;
-import com.ratelimitx.core.model.RateLimitResult;
-import com.ratelimitx.core.repository.UserRepository;
-import com.ratelimitx.core.service.MetricsService;
-import com.ratelimitx.core.service.PrometheusMetricsService;
+import com.ratelimitx.core.dto.BatchCheckRequest;
+import com.ratelimitx.core.security.AuthenticatedUser;
+import com.ratelimitx.core.service.BatchCheckService;
+import com.ratelimitx.core.service.LimitResolver;
 import com.ratelimitx.core.service.ResilientRateLimiter;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.validation.Valid;
+
 
 
 /**
- * Main API Controller - Now with JWT Authentication and Prometheus Metrics!
- * 
- * User ID is extracted from JWT token, not from header.
- * Rate limit is based on user's tier (USER, PREMIUM, ADMIN).
- * All requests are recorded in Prometheus metrics.
+ * Main API Controller. GET /api/data lives in DataController (or
+ * ReactiveDataController); this holds the remaining /api endpoints.
  */
 @RestController
 @RequestMapping("/api")
 public class ApiController {
 
     private final ResilientRateLimiter resilientRateLimiter;
-    private final MetricsService metricsService;
-    private final PrometheusMetricsService prometheusMetricsService;
-    private final UserRepository userRepository;
-    
-    @Value("${ratelimit.algorithm}")
-    private String algorithm;
+    private final BatchCheckService batchCheckService;
+    private final LimitResolver limitResolver;
     
     public ApiController(
             ResilientRateLimiter resilientRateLimiter,
-            MetricsService metricsService,
-            PrometheusMetricsService prometheusMetricsService,
-            UserRepository userRepository
+            BatchCheckService batchCheckService,
+            LimitResolver limitResolver
     ) {
         this.resilientRateLimiter = resilientRateLimiter;
-        this.metricsService = metricsService;
-        this.prometheusMetricsService = prometheusMetricsService;
-        this.userRepository = userRepository;
-    }
-    
-    @GetMapping("/data")
-    public ResponseEntity<String> getData(Authentication authentication) {
-        
-        long startTime = System.currentTimeMillis();
-        
-        // Get username from JWT (via Authentication object)
-        String userId = authentication.getName();
-        
-        // Load user to get their rate limit
-        User user = userRepository.findByUsername(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        
-        // Check rate limit with user's custom limit
-        RateLimitResult result = resilientRateLimiter.checkRateLimit(userId, user.getRateLimit());
-        
-        long responseTime = System.currentTimeMillis() - startTime;
-        
-        // Record metrics in Prometheus (non-critical, continue on error)
-        try {
-            prometheusMetricsService.recordRequest(userId, result.isAllowed(), algorithm);
-            prometheusMetricsService.recordCheckDuration(responseTime, algorithm, result.isAllowed());
-            
-            if (!result.isAllowed()) {
-                prometheusMetricsService.recordDenied(userId);
-            }
-        } catch (Exception e) {
-            // Prometheus metrics are non-critical
-        }
-        
-        // Record legacy metrics
-        try {
-            metricsService.recordRequest(userId, result.isAllowed(), responseTime);
-        } catch (Exception e) {
-            // Metrics are non-critical, log and continue
-        }
-        
-        // Build response headers
-        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity
-                .status(result.isAllowed() ? HttpStatus.OK : HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-RateLimit-Limit", String.valueOf(user.getRateLimit()))
-                .header("X-RateLimit-Remaining", String.valueOf(result.getRemaining()))
-                .header("X-RateLimit-Reset", String.valueOf(result.getResetTime()))
-                .header("X-Algorithm", resilientRateLimiter.getCurrentMode())
-                .header("X-User-Role", user.getRole().name());
-        
-        if (!result.isAllowed()) {
-            responseBuilder.header("Retry-After", String.valueOf(result.getResetTime() / 1000));
-            return responseBuilder.body("Rate limit exceeded. Retry after " + result.getResetTime() + "ms");
-        }
-        
-        return responseBuilder.body("Success! Here's your data");
+        this.batchCheckService = batchCheckService;
+        this.limitResolver = limitResolver;
     }
     
     /**
@@ -105,16 +46,28 @@ public class ApiController {
      */
     @GetMapping("/status")
     public ResponseEntity<?> getStatus(Authentication authentication) {
-        String userId = authentication.getName();
-        
-        User user = userRepository.findByUsername(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
         
         return ResponseEntity.ok(java.util.Map.of(
                 "username", user.getUsername(),
                 "role", user.getRole().name(),
-                "rateLimit", user.getRateLimit(),
+                "rateLimit", limitResolver.resolve(user),
                 "algorithm", resilientRateLimiter.getCurrentMode()
         ));
     }
+
+    /**
+     * Bulk rate limit decisions for gateways and sidecars.
+     * See BatchCheckService for the request/response format.
+     */
+    @PostMapping("/check/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> checkBatch(@Valid @RequestBody BatchCheckRequest request) {
+        if (request.getChecks().size() > batchCheckService.getMaxItems()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(java.util.Map.of(
+                    "error", "At most " + batchCheckService.getMaxItems() + " checks per call"
+            ));
+        }
+        return ResponseEntity.ok(batchCheckService.check(request));
+    }
 }
@@ -7,6 +7,7 @@ import com.ratelimitx.core.entity.Role;
 import com.ratelimitx.core.entity.User;
 import com.ratelimitx.core.repository.UserRepository;
 import com.ratelimitx.core.security.JwtUtil;
+import com.ratelimitx.core.service.LimitResolver;
 import jakarta.validation.Valid;
 import java.util.HashMap;
 import java.util.Map;
@@ -44,17 +45,20 @@ public class AuthController {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
+    private final LimitResolver limitResolver;
     
     public AuthController(
             AuthenticationManager authenticationManager,
             UserRepository userRepository,
             PasswordEncoder passwordEncoder,
-            JwtUtil jwtUtil
+            JwtUtil jwtUtil,
+            LimitResolver limitResolver
     ) {
         this.authenticationManager = authenticationManager;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
+        this.limitResolver = limitResolver;
     }
     
     @PostMapping("/register")
@@ -80,6 +84,8 @@ public class AuthController {
         user.setRateLimit(Role.USER.getDefaultRateLimit()); 
         
         userRepository.save(user);
+        // Nodes may have cached this name as "no such user"
+        limitResolver.invalidate(user.getUsername());
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "User registered successfully");
@@ -109,7 +115,8 @@ public class AuthController {
             String token = jwtUtil.generateToken(
                     user.getUsername(),
                     "ROLE_" + user.getRole().name(),
-                    user.getRateLimit()
+                    user.getRateLimit(),
+                    user.getTenantId()
             );
             
             AuthResponse response = new AuthResponse(
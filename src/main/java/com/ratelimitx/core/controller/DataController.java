@@ -0,0 +1,62 @@
+package com.ratelimitx.core.controller;
+
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.security.AuthenticatedUser;
+import com.ratelimitx.core.service.ResilientRateLimiter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+
+
+/**
+ * Rate limited data endpoint - with JWT Authentication and Prometheus Metrics!
+ * 
+ * User ID is extracted from JWT token, not from header.
+ * Rate limit is based on user's tier (USER, PREMIUM, ADMIN) and comes
+ * from LimitResolver's in-process cache (the token's limit until it is
+ * loaded), so no Redis or database lookup per request.
+ * All requests are recorded in Prometheus metrics.
+ *
+ * Blocking version; replaced by ReactiveDataController when
+ * ratelimit.reactive.enabled=true.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(name = "ratelimit.reactive.enabled", havingValue = "false", matchIfMissing = true)
+public class DataController {
+
+    private final ResilientRateLimiter resilientRateLimiter;
+    private final DataResponses dataResponses;
+
+    public DataController(ResilientRateLimiter resilientRateLimiter, DataResponses dataResponses) {
+        this.resilientRateLimiter = resilientRateLimiter;
+        this.dataResponses = dataResponses;
+    }
+
+    @GetMapping("/data")
+    public ResponseEntity<String> getData(Authentication authentication, HttpServletRequest request) {
+        
+        long startTime = System.currentTimeMillis();
+        
+        // Role and rate limit were resolved by the JWT filter
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        String userId = user.getUsername();
+        
+        // Check rate limit with user's custom limit, plus global/tenant/endpoint
+        // limits in the same Redis call when hierarchical limits are enabled
+        RateLimitResult result;
+        if (dataResponses.isHierarchical()) {
+            result = resilientRateLimiter.checkRateLimit(userId, dataResponses.rules(user, request));
+        } else {
+            result = resilientRateLimiter.checkRateLimit(userId, dataResponses.limit(user));
+        }
+        
+        return dataResponses.respond(user, result, startTime);
+    }
+}
@@ -0,0 +1,122 @@
+package com.ratelimitx.core.controller;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.model.LimitRule;
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.security.AuthenticatedUser;
+import com.ratelimitx.core.service.ActiveUserTracker;
+import com.ratelimitx.core.service.LimitResolver;
+import com.ratelimitx.core.service.LimitRuleResolver;
+import com.ratelimitx.core.service.MetricsService;
+import com.ratelimitx.core.service.PrometheusMetricsService;
+import com.ratelimitx.core.service.ResilientRateLimiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+
+/**
+ * The parts of GET /api/data that do not depend on how the limit is
+ * checked: which rules apply, metrics and the response with its headers.
+ * Shared by DataController and ReactiveDataController so both answer
+ * identically.
+ */
+@Component
+class DataResponses {
+
+    private final ResilientRateLimiter resilientRateLimiter;
+    private final MetricsService metricsService;
+    private final PrometheusMetricsService prometheusMetricsService;
+    private final LimitRuleResolver limitRuleResolver;
+    private final ActiveUserTracker activeUserTracker;
+    private final LimitResolver limitResolver;
+
+    DataResponses(
+            ResilientRateLimiter resilientRateLimiter,
+            MetricsService metricsService,
+            PrometheusMetricsService prometheusMetricsService,
+            LimitRuleResolver limitRuleResolver,
+            ActiveUserTracker activeUserTracker,
+            LimitResolver limitResolver
+    ) {
+        this.resilientRateLimiter = resilientRateLimiter;
+        this.metricsService = metricsService;
+        this.prometheusMetricsService = prometheusMetricsService;
+        this.limitRuleResolver = limitRuleResolver;
+        this.activeUserTracker = activeUserTracker;
+        this.limitResolver = limitResolver;
+    }
+
+    /**
+     * The user's current limit (see LimitResolver); the token's is only a fallback.
+     */
+    int limit(AuthenticatedUser user) {
+        return limitResolver.resolve(user);
+    }
+
+    /**
+     * Whether global/tenant/endpoint limits are checked with the user's own.
+     */
+    boolean isHierarchical() {
+        return limitRuleResolver.isEnabled();
+    }
+
+    List<LimitRule> rules(AuthenticatedUser user, HttpServletRequest request) {
+        // The header is client-controlled unless a trusted gateway sets it
+        String tenant = user.getTenant();
+        if (limitRuleResolver.isTenantHeaderTrusted()) {
+            String header = request.getHeader(limitRuleResolver.getTenantHeader());
+            if (header != null) {
+                tenant = header;
+            }
+        }
+        String endpoint = request.getMethod() + " " + request.getRequestURI();
+        return limitRuleResolver.resolve(user, tenant, endpoint);
+    }
+
+    ResponseEntity<String> respond(AuthenticatedUser user, RateLimitResult result, long startTime) {
+        String userId = user.getUsername();
+        long responseTime = System.currentTimeMillis() - startTime;
+        String algorithm = resilientRateLimiter.getAlgorithm().name();
+        
+        // Record metrics in Prometheus (non-critical, continue on error)
+        try {
+            prometheusMetricsService.recordRequest(userId, result.isAllowed(), algorithm);
+            prometheusMetricsService.recordCheckDuration(responseTime, algorithm, result.isAllowed());
+            
+            if (!result.isAllowed()) {
+                prometheusMetricsService.recordDenied(userId);
+            }
+        } catch (Exception e) {
+            // Prometheus metrics are non-critical
+        }
+        
+        // Record legacy metrics
+        try {
+            metricsService.recordRequest(userId, result.isAllowed(), responseTime);
+            activeUserTracker.record(userId, algorithm);
+        } catch (Exception e) {
+            // Metrics are non-critical, log and continue
+        }
+        
+        // Build response headers
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity
+                .status(result.isAllowed() ? HttpStatus.OK : HttpStatus.TOO_MANY_REQUESTS)
+                .header("X-RateLimit-Limit", String.valueOf(result.getLimit()))
+                .header("X-RateLimit-Remaining", String.valueOf(result.getRemaining()))
+                .header("X-RateLimit-Reset", String.valueOf(result.getResetTime()))
+                .header("X-Algorithm", resilientRateLimiter.getCurrentMode())
+                .header("X-User-Role", user.getRole().name());
+        
+        if (!result.isAllowed()) {
+            responseBuilder.header("Retry-After", String.valueOf(result.getResetTime() / 1000));
+            return responseBuilder.body("Rate limit exceeded. Retry after " + result.getResetTime() + "ms");
+        }
+        
+        return responseBuilder.body("Success! Here's your data");
+    }
+}
@@ -0,0 +1,55 @@
+package com.ratelimitx.core.controller;
+
+import com.ratelimitx.core.model.RateLimitResult;
+import com.ratelimitx.core.security.AuthenticatedUser;
+import com.ratelimitx.core.service.ReactiveRateLimiterService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import reactor.core.publisher.Mono;
+
+
+
+/**
+ * Non-blocking GET /api/data (ratelimit.reactive.enabled=true).
+ *
+ * Same rules, metrics and headers as DataController, but the Redis check
+ * returns a Mono: the request is completed asynchronously when Redis
+ * replies, so no request thread waits on the round trip.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(name = "ratelimit.reactive.enabled", havingValue = "true")
+public class ReactiveDataController {
+
+    private final ReactiveRateLimiterService reactiveRateLimiterService;
+    private final DataResponses dataResponses;
+
+    public ReactiveDataController(ReactiveRateLimiterService reactiveRateLimiterService, DataResponses dataResponses) {
+        this.reactiveRateLimiterService = reactiveRateLimiterService;
+        this.dataResponses = dataResponses;
+    }
+
+    @GetMapping("/data")
+    public Mono<ResponseEntity<String>> getData(Authentication authentication, HttpServletRequest request) {
+
+        long startTime = System.currentTimeMillis();
+
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        String userId = user.getUsername();
+
+        Mono<RateLimitResult> result;
+        if (dataResponses.isHierarchical()) {
+            result = reactiveRateLimiterService.checkRateLimit(userId, dataResponses.rules(user, request));
+        } else {
+            result = reactiveRateLimiterService.checkRateLimit(userId, dataResponses.limit(user));
+        }
+
+        return result.map(r -> dataResponses.respond(user, r, startTime));
+    }
+}
@@ -0,0 +1,56 @@
+package com.ratelimitx.core.dto;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+
+
+public class BatchCheckRequest {
+
+    @NotEmpty(message = "At least one check is required")
+    private List<Item> checks;
+
+    public List<Item> getChecks() {
+        return checks;
+    }
+
+    public void setChecks(List<Item> checks) {
+        this.checks = checks;
+    }
+
+    /**
+     * One decision: the key to limit, how many permits it costs (default 1)
+     * and the rule giving its limit: a tier name (user, premium, admin) or
+     * a number of requests per window (default user).
+     */
+    public static class Item {
+
+        private String key;
+        private Integer cost;
+        private String rule;
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public Integer getCost() {
+            return cost;
+        }
+
+        public void setCost(Integer cost) {
+            this.cost = cost;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public void setRule(String rule) {
+            this.rule = rule;
+        }
+    }
+}
@@ -38,6 +38,9 @@ public class User {
     @Column(name = "rate_limit")
     private Integer rateLimit = 10;  // Custom rate limit (overrides role default)
     
+    @Column(name = "tenant_id", length = 50)
+    private String tenantId;  // Tenant for hierarchical limits, signed into the token
+    
     @Column(nullable = false)
     private Boolean enabled = true;
     
@@ -115,6 +118,14 @@ public class User {
         this.rateLimit = rateLimit;
     }
     
+    public String getTenantId() {
+        return tenantId;
+    }
+    
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+    
     public Boolean getEnabled() {
         return enabled;
     }
@@ -0,0 +1,12 @@
+package com.ratelimitx.core.model;
+
+/**
+ * One dimension of a hierarchical limit: a Redis key and its limit per window.
+ */
+public record LimitRule(String dimension, String key, int limit, int windowSeconds) {
+
+    /**
+     * Dimension of the requesting user's own rule.
+     */
+    public static final String USER = "user";
+}
@@ -0,0 +1,123 @@
+package com.ratelimitx.core.security;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.ratelimitx.core.entity.Role;
+import com.ratelimitx.core.entity.User;
+
+import io.jsonwebtoken.Claims;
+
+
+/**
+ * Principal placed in the SecurityContext by {@link JwtAuthenticationFilter}.
+ *
+ * Carries everything the request path needs (role, rate limit) so controllers
+ * never have to go back to the database for it.
+ */
+public class AuthenticatedUser implements UserDetails {
+
+    private final String username;
+    private final Role role;
+    private final int rateLimit;
+    private final String tenant;
+    private final List<GrantedAuthority> authorities;
+
+    public AuthenticatedUser(String username, Role role, int rateLimit) {
+        this(username, role, rateLimit, null);
+    }
+
+    public AuthenticatedUser(String username, Role role, int rateLimit, String tenant) {
+        this.username = username;
+        this.role = role;
+        this.rateLimit = rateLimit;
+        this.tenant = tenant;
+        this.authorities = List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+
+    /**
+     * Build from already verified token claims (stateless mode).
+     * Tokens without a rateLimit claim fall back to the role default.
+     */
+    public static AuthenticatedUser fromClaims(Claims claims) {
+        String roleClaim = claims.get("role", String.class);
+        Role role = roleClaim != null
+                ? Role.valueOf(roleClaim.startsWith("ROLE_") ? roleClaim.substring(5) : roleClaim)
+                : Role.USER;
+
+        Integer rateLimit = claims.get("rateLimit", Integer.class);
+
+        return new AuthenticatedUser(
+                claims.getSubject(),
+                role,
+                rateLimit != null ? rateLimit : role.getDefaultRateLimit(),
+                claims.get("tenant", String.class)
+        );
+    }
+
+    /**
+     * Build from the database entity (database mode).
+     */
+    public static AuthenticatedUser fromEntity(User user) {
+        return new AuthenticatedUser(
+                user.getUsername(),
+                user.getRole(),
+                user.getRateLimit() != null ? user.getRateLimit() : user.getRole().getDefaultRateLimit(),
+                user.getTenantId()
+        );
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Tenant from the signed "tenant" claim (or the user row), null if absent.
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
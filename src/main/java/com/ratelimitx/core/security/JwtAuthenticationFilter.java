@@ -2,13 +2,16 @@ package com.ratelimitx.core.security;
 
 import java.io.IOException;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import com.ratelimitx.core.entity.User;
+
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -17,15 +20,31 @@ import jakarta.servlet.http.HttpServletResponse;
 
 
 
+/**
+ * Authenticates requests carrying a Bearer token.
+ *
+ * jwt.auth-mode=stateless  - principal is built from the verified claims,
+ *                            revocation checked in-process (no database)
+ * jwt.auth-mode=database   - user is loaded from Postgres on every request
+ */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final TokenRevocationService revocationService;
+    private final boolean stateless;
     
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(
+            JwtUtil jwtUtil,
+            CustomUserDetailsService userDetailsService,
+            TokenRevocationService revocationService,
+            @Value("${jwt.auth-mode:stateless}") String authMode
+    ) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.revocationService = revocationService;
+        this.stateless = "stateless".equalsIgnoreCase(authMode);
     }
     
     @Override
@@ -45,18 +64,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         final String jwt = authHeader.substring(7);
         
         try {
-            final String username = jwtUtil.extractUsername(jwt);
-            
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                
+                // Single verification per request (signature + expiry), cached per token
+                Claims claims = jwtUtil.verify(jwt);
                 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                AuthenticatedUser user = null;
+                if (claims.getSubject() != null) {
+                    user = stateless ? authenticateFromClaims(claims) : authenticateFromDatabase(claims);
+                }
                 
-                if (jwtUtil.validateToken(jwt, userDetails)) {
+                if (user != null) {
                     
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
+                            user,
                             null,
-                            userDetails.getAuthorities()
+                            user.getAuthorities()
                     );
                     
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -70,4 +93,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private AuthenticatedUser authenticateFromClaims(Claims claims) {
+        if (revocationService.isRevoked(claims.getSubject(), claims.getIssuedAt())) {
+            return null;
+        }
+        return AuthenticatedUser.fromClaims(claims);
+    }
+
+    private AuthenticatedUser authenticateFromDatabase(Claims claims) {
+        User entity = userDetailsService.loadUserEntityByUsername(claims.getSubject());
+        AuthenticatedUser user = AuthenticatedUser.fromEntity(entity);
+        
+        if (!Boolean.TRUE.equals(entity.getEnabled()) || !jwtUtil.validateToken(claims, user)) {
+            return null;
+        }
+        return user;
+    }
+}
@@ -14,8 +14,10 @@ import org.springframework.stereotype.Component;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 
 
 @Component
@@ -26,11 +28,22 @@ public class JwtUtil {
     
     @Value("${jwt.expiration}")
     private Long expiration;
+
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
     
+    // Built once: the key and parser are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+    private VerifiedTokenCache verifiedTokens;
     
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secretString.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secretString.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        verifiedTokens = new VerifiedTokenCache(cacheMaxSize);
     }
     
     public String generateToken(UserDetails userDetails) {
@@ -41,9 +54,19 @@ public class JwtUtil {
     }
     
     public String generateToken(String username, String role, Integer rateLimit) {
+        return generateToken(username, role, rateLimit, null);
+    }
+    
+    /**
+     * The tenant is signed into the token so hierarchical limits can trust it.
+     */
+    public String generateToken(String username, String role, Integer rateLimit, String tenant) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("role", role);
         claims.put("rateLimit", rateLimit);
+        if (tenant != null) {
+            claims.put("tenant", tenant);
+        }
         return createToken(claims, username);
     }
     
@@ -56,21 +79,45 @@ public class JwtUtil {
                 .subject(subject)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
+    /**
+     * Verify signature and expiry once and return the claims.
+     *
+     * Tokens seen before are served from the verified-token cache until
+     * their own expiry, skipping the HMAC and JSON work.
+     *
+     * @throws JwtException if the token is malformed, forged or expired
+     */
+    public Claims verify(String token) {
+        long now = System.currentTimeMillis();
+        String digest = verifiedTokens.digest(token);
+
+        Claims cached = verifiedTokens.get(digest, now);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(digest, claims, claims.getExpiration().getTime(), now);
+        }
+        return claims;
+    }
+
     public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(verify(token), userDetails);
+    }
+
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
     
     public boolean isTokenValid(String token) {
         try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token);
+            verify(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
@@ -97,24 +144,20 @@ public class JwtUtil {
     
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = verify(token);
         return claimsResolver.apply(claims);
     }
-    
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
 
     
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
     
     public Long getExpirationTime() {
         return expiration;
     }
-}
\ No newline at end of file
+
+    public int getVerifiedTokenCacheSize() {
+        return verifiedTokens.size();
+    }
+}
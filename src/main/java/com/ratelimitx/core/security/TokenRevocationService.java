@@ -0,0 +1,108 @@
+package com.ratelimitx.core.security;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * Token revocation for stateless authentication.
+ *
+ * A revocation is stored per user as "tokens issued before this instant are
+ * invalid". The request path only reads the in-process map; the Redis hash
+ * is the shared copy that every node pulls in on a fixed interval.
+ *
+ * A revocation only matters while tokens issued before it can still be
+ * valid, so entries older than the token lifetime (plus a margin) are
+ * dropped on refresh, locally and from the hash, and the hash itself
+ * expires once no revocation has been added for that long.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private static final String REVOCATIONS_KEY = "jwt-revocations";
+
+    // Clock skew between the nodes that issue and check tokens
+    private static final long RETENTION_MARGIN_MS = 60_000;
+
+    private final StringRedisTemplate redis;
+    private final long retentionMs;
+
+    // username -> epoch millis; tokens issued before this are rejected
+    private volatile Map<String, Long> revokedBefore = new ConcurrentHashMap<>();
+
+    public TokenRevocationService(StringRedisTemplate redis, @Value("${jwt.expiration}") long tokenLifetimeMs) {
+        this.redis = redis;
+        this.retentionMs = tokenLifetimeMs + RETENTION_MARGIN_MS;
+    }
+
+    public boolean isRevoked(String username, Date issuedAt) {
+        Long cutoff = revokedBefore.get(username);
+        if (cutoff == null) {
+            return false;
+        }
+        return issuedAt == null || issuedAt.getTime() < cutoff;
+    }
+
+    /**
+     * Invalidate every token issued to the user up to now.
+     */
+    public void revokeUser(String username) {
+        // iat has whole-second precision, so every token of the current second
+        // is revoked too; a new login is accepted from the next second on
+        long cutoff = (System.currentTimeMillis() / 1000 + 1) * 1000;
+        revokedBefore.put(username, cutoff);
+        redis.opsForHash().put(REVOCATIONS_KEY, username, String.valueOf(cutoff));
+        redis.expire(REVOCATIONS_KEY, Duration.ofMillis(retentionMs));
+        logger.info("Revoked tokens issued before {} for user {}", cutoff, username);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation-refresh-ms:5000}")
+    public void refresh() {
+        try {
+            Map<Object, Object> entries = redis.opsForHash().entries(REVOCATIONS_KEY);
+            long oldest = System.currentTimeMillis() - retentionMs;
+
+            Map<String, Long> latest = new ConcurrentHashMap<>();
+            List<Object> expired = new ArrayList<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                long cutoff = Long.parseLong((String) entry.getValue());
+                if (cutoff < oldest) {
+                    expired.add(entry.getKey());
+                } else {
+                    latest.put((String) entry.getKey(), cutoff);
+                }
+            }
+            // Keep local revocations Redis has not seen yet, unless they are past retention too
+            revokedBefore.forEach((user, cutoff) -> {
+                if (cutoff >= oldest) {
+                    latest.merge(user, cutoff, Math::max);
+                }
+            });
+
+            revokedBefore = latest;
+            if (!expired.isEmpty()) {
+                redis.opsForHash().delete(REVOCATIONS_KEY, expired.toArray());
+            }
+        } catch (Exception e) {
+            // Keep serving from the last known state
+            logger.warn("Could not refresh token revocations: {}", e.getMessage());
+        }
+    }
+
+    public int getRevokedUserCount() {
+        return revokedBefore.size();
+    }
+}
@@ -0,0 +1,87 @@
+package com.ratelimitx.core.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.jsonwebtoken.Claims;
+
+
+/**
+ * Bounded cache of tokens whose signature has already been verified.
+ *
+ * Keyed by the SHA-256 digest of the raw token (the token itself is never
+ * stored). Each entry is only served until the token's own expiry.
+ * When full, expired entries are swept at most once per second; if the
+ * cache is still full, new tokens are simply not cached.
+ */
+class VerifiedTokenCache {
+
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long lastSweep = 0;
+
+    VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    Claims get(String digest, long now) {
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= now) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.claims;
+    }
+
+    void put(String digest, Claims claims, long expiresAt, long now) {
+        if (maxSize <= 0 || expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            sweepExpired(now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(digest, new Entry(claims, expiresAt));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private void sweepExpired(long now) {
+        if (now - lastSweep < SWEEP_INTERVAL_MS) {
+            return;
+        }
+        lastSweep = now;
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    private record Entry(Claims claims, long expiresAt) {}
+}
@@ -0,0 +1,193 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.algorithm.RateLimitAlgorithmRegistry;
+import com.ratelimitx.core.config.RedisKeys;
+
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Active users, tracked as requests happen instead of by walking the keyspace.
+ *
+ * Every checked request adds its user to an in-memory set per (algorithm,
+ * minute). flush() writes those sets with PFADD into per-minute
+ * HyperLogLogs, "active:all:{minute}" and "active:{algorithm}:{minute}",
+ * which expire after the window. Counts are a PFCOUNT over the last
+ * window-minutes keys (merged on read, ~0.8% error), refreshed after each
+ * flush in one pipeline, so readers never touch Redis. Each active user
+ * holds one limiter key of the algorithm it was checked with, so the
+ * per-algorithm counts also stand for the number of live limiter keys.
+ */
+@Service
+public class ActiveUserTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveUserTracker.class);
+
+    private static final long MINUTE_MS = 60_000;
+    private static final String ALL = "all";
+
+    @Autowired
+    private StringRedisTemplate redis;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    private RateLimitAlgorithmRegistry algorithmRegistry;
+
+    @Autowired
+    private PrometheusMetricsService prometheusMetricsService;
+
+    @Value("${metrics.active-users.window-minutes:5}")
+    private int windowMinutes;
+
+    // (algorithm, minute) -> users seen since the last flush
+    private final ConcurrentHashMap<Bucket, Set<String>> pending = new ConcurrentHashMap<>();
+
+    // Last counts read from Redis; kept while it is unreachable
+    private volatile long activeUsers;
+    private volatile Map<String, Long> activeUsersByAlgorithm = Map.of();
+    private volatile long refreshedAt;
+
+    public void record(String userId, String algorithm) {
+        Bucket bucket = new Bucket(algorithm, System.currentTimeMillis() / MINUTE_MS);
+        Set<String> users = pending.get(bucket);
+        if (users == null) {
+            users = pending.computeIfAbsent(bucket, b -> ConcurrentHashMap.newKeySet());
+        }
+        users.add(userId);
+    }
+
+    /**
+     * Write the pending users to the HyperLogLogs in one pipeline, then
+     * re-read the counts.
+     */
+    @Scheduled(fixedDelayString = "${metrics.flush-interval-ms:1000}")
+    public void flush() {
+        long currentMinute = System.currentTimeMillis() / MINUTE_MS;
+        Map<Bucket, String[]> batch = new HashMap<>();
+        for (Map.Entry<Bucket, Set<String>> entry : pending.entrySet()) {
+            // Drain element by element: record() may still be adding to this
+            // set, and whatever it adds after this pass waits for the next flush
+            Set<String> users = entry.getValue();
+            List<String> drained = new ArrayList<>();
+            for (String user : users) {
+                if (users.remove(user)) {
+                    drained.add(user);
+                }
+            }
+            if (!drained.isEmpty()) {
+                batch.put(entry.getKey(), drained.toArray(String[]::new));
+            }
+            // Sets are only dropped once their minute has left the window,
+            // when a late add could no longer be counted anyway
+            if (entry.getKey().minute() < currentMinute - windowMinutes && users.isEmpty()) {
+                pending.remove(entry.getKey(), users);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            long ttlSeconds = (windowMinutes + 1) * MINUTE_MS / 1000;
+            try {
+                redis.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Map.Entry<Bucket, String[]> entry : batch.entrySet()) {
+                        long minute = entry.getKey().minute();
+                        for (String key : List.of(key(entry.getKey().algorithm(), minute), key(ALL, minute))) {
+                            conn.pfAdd(key, entry.getValue());
+                            conn.expire(key, ttlSeconds);
+                        }
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                // Put the users back so the next flush retries them
+                batch.forEach((bucket, users) -> pending
+                        .computeIfAbsent(bucket, b -> ConcurrentHashMap.newKeySet())
+                        .addAll(List.of(users)));
+                logger.warn("Active user flush failed, {} buckets will be retried: {}", batch.size(), e.getMessage());
+                return;
+            }
+        }
+
+        refresh();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void refresh() {
+        long minute = System.currentTimeMillis() / MINUTE_MS;
+        List<String> series = new ArrayList<>(algorithmRegistry.names());
+        series.add(0, ALL);
+
+        try {
+            List<Object> counts = redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String name : series) {
+                    String[] keys = new String[windowMinutes];
+                    for (int i = 0; i < windowMinutes; i++) {
+                        keys[i] = key(name, minute - i);
+                    }
+                    conn.pfCount(keys);
+                }
+                return null;
+            });
+
+            Map<String, Long> byAlgorithm = new LinkedHashMap<>();
+            for (int i = 1; i < series.size(); i++) {
+                byAlgorithm.put(series.get(i), (Long) counts.get(i));
+            }
+            activeUsers = (Long) counts.get(0);
+            activeUsersByAlgorithm = byAlgorithm;
+            refreshedAt = System.currentTimeMillis();
+            prometheusMetricsService.setActiveUsers((int) activeUsers);
+        } catch (Exception e) {
+            logger.debug("Could not refresh active users, keeping last counts: {}", e.getMessage());
+        }
+    }
+
+    private String key(String series, long minute) {
+        // One hash tag for all of them, so PFCOUNT can merge in cluster mode
+        return redisKeys.group("active", series + ":" + minute);
+    }
+
+    public long getActiveUsers() {
+        return activeUsers;
+    }
+
+    public Map<String, Long> getActiveUsersByAlgorithm() {
+        return activeUsersByAlgorithm;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("windowMinutes", windowMinutes);
+        status.put("activeUsers", activeUsers);
+        status.put("activeUsersByAlgorithm", activeUsersByAlgorithm);
+        status.put("refreshedAt", refreshedAt);
+        return status;
+    }
+
+    private record Bucket(String algorithm, long minute) {}
+}
@@ -0,0 +1,117 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.dto.BatchCheckRequest;
+import com.ratelimitx.core.entity.Role;
+import com.ratelimitx.core.model.RateLimitResult;
+
+
+/**
+ * Bulk decisions for gateways: many (key, cost, rule) checks per HTTP call.
+ *
+ * Valid items are decided together in one Redis call (GCRA per key, each
+ * key independent). Failure semantics:
+ *   - an invalid item gets [-1, 0, 0] and a message under "errors" by its
+ *     index; the other items are still decided
+ *   - if Redis fails, the whole batch is decided by the local fallback and
+ *     "mode" says so
+ * Each result is [allowed (1/0), remaining, reset ms].
+ */
+@Service
+public class BatchCheckService {
+
+    @Autowired
+    private ResilientRateLimiter resilientRateLimiter;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @Value("${ratelimit.batch-check.max-items:1000}")
+    private int maxItems;
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public Map<String, Object> check(BatchCheckRequest request) {
+        List<BatchCheckRequest.Item> items = request.getChecks();
+
+        long[][] results = new long[items.size()][];
+        Map<String, String> errors = new LinkedHashMap<>();
+
+        List<GcraService.Check> checks = new ArrayList<>(items.size());
+        List<Integer> positions = new ArrayList<>(items.size());
+
+        for (int i = 0; i < items.size(); i++) {
+            BatchCheckRequest.Item item = items.get(i);
+            String error = validate(item);
+            if (error != null) {
+                results[i] = new long[] {-1, 0, 0};
+                errors.put(String.valueOf(i), error);
+                continue;
+            }
+            int cost = item.getCost() != null ? item.getCost() : 1;
+            checks.add(new GcraService.Check(item.getKey(), resolveLimit(item.getRule()), config.getWindowSizeSeconds(), cost));
+            positions.add(i);
+        }
+
+        if (!checks.isEmpty()) {
+            List<RateLimitResult> decided = resilientRateLimiter.checkBatch(checks);
+            for (int j = 0; j < decided.size(); j++) {
+                RateLimitResult result = decided.get(j);
+                results[positions.get(j)] = new long[] {
+                        result.isAllowed() ? 1 : 0, result.getRemaining(), result.getResetTime()};
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("mode", resilientRateLimiter.isUsingFallback() ? "local-fallback" : "gcra");
+        response.put("results", results);
+        if (!errors.isEmpty()) {
+            response.put("errors", errors);
+        }
+        return response;
+    }
+
+    private String validate(BatchCheckRequest.Item item) {
+        if (item == null || item.getKey() == null || item.getKey().isBlank()) {
+            return "key is required";
+        }
+        if (item.getCost() != null && item.getCost() < 1) {
+            return "cost must be at least 1";
+        }
+        if (resolveLimit(item.getRule()) <= 0) {
+            return "unknown rule: " + item.getRule();
+        }
+        return null;
+    }
+
+    // Tier name (user, premium, admin) or a literal limit per window
+    private int resolveLimit(String rule) {
+        if (rule == null || rule.isBlank()) {
+            return Role.USER.getDefaultRateLimit();
+        }
+        try {
+            return Integer.parseInt(rule);
+        } catch (NumberFormatException e) {
+            // not a number, try a tier
+        }
+        try {
+            return Role.valueOf(rule.toUpperCase(Locale.ROOT)).getDefaultRateLimit();
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ratelimitx.core.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Cross-user micro-batching of Redis checks.
+ *
+ * Concurrent checks for different users are coalesced into one multi-key
+ * script call per lane (sliding window, token bucket), trading up to
+ * ratelimit.batching.max-wait-micros of added latency for far fewer round
+ * trips under load. Disabled by default. With sharding there is a pair of
+ * lanes per shard, so a batch never waits on (or fails with) another shard.
+ */
+@Service
+public class BatchedCheckExecutor {
+
+    @Autowired
+    private SlidingWindowService slidingWindowService;
+
+    @Autowired
+    private TokenBucketService tokenBucketService;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ratelimit.batching.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ratelimit.batching.max-size:64}")
+    private int maxSize;
+
+    @Value("${ratelimit.batching.max-wait-micros:50}")
+    private long maxWaitMicros;
+
+    @Value("${ratelimit.batching.concurrency:4}")
+    private int concurrency;
+
+    @Value("${ratelimit.batching.max-pending-batches:64}")
+    private int maxPendingBatches;
+
+    @Value("${ratelimit.batching.timeout-ms:3000}")
+    private long timeoutMs;
+
+    private final Map<RedisShards.Shard, MicroBatcher<SlidingWindowService.Check, RateLimitResult>> slidingWindowLanes = new HashMap<>();
+    private final Map<RedisShards.Shard, MicroBatcher<TokenBucketService.Check, RateLimitResult>> tokenBucketLanes = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (RedisShards.Shard shard : redisShards.shards()) {
+            String suffix = redisShards.isSharded() ? "@" + shard.name() : "";
+            slidingWindowLanes.put(shard, new MicroBatcher<>("sliding-window" + suffix, maxSize, maxWaitMicros,
+                    concurrency, maxPendingBatches, timeoutMs, slidingWindowService::checkRateLimitBatch, meterRegistry));
+            tokenBucketLanes.put(shard, new MicroBatcher<>("token-bucket" + suffix, maxSize, maxWaitMicros,
+                    concurrency, maxPendingBatches, timeoutMs, tokenBucketService::tryConsumeBatch, meterRegistry));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        slidingWindowLanes.values().forEach(MicroBatcher::shutdown);
+        tokenBucketLanes.values().forEach(MicroBatcher::shutdown);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public RateLimitResult slidingWindow(String userId, int maxRequests, int windowSeconds) {
+        return slidingWindowLanes.get(redisShards.shardFor(userId)).submit(new SlidingWindowService.Check(userId, maxRequests, windowSeconds));
+    }
+
+    public RateLimitResult tokenBucket(String userId, int capacity, double refillRate) {
+        return tokenBucketLanes.get(redisShards.shardFor(userId)).submit(new TokenBucketService.Check(userId, 1, capacity, refillRate));
+    }
+}
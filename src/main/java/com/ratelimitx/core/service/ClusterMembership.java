@@ -0,0 +1,244 @@
+package com.ratelimitx.core.service;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.circuitbreaker.CircuitBreakerState;
+import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Which nodes share the limits, for sizing the local fallback.
+ *
+ * While the circuit is closed every node heartbeats into the sorted set
+ * "nodes:heartbeat" (score = last heartbeat, ms of Redis server time, so
+ * node clocks need not agree) and reports its request
+ * rate into the hash "nodes:traffic"; the same script drops nodes that
+ * missed node-ttl-ms and returns the live count and their total rate.
+ * The last answer is kept, so during an outage each node knows how many
+ * peers were alive when Redis was last reachable.
+ *
+ * From that, LocalRateLimiter gets this node's share of every limit:
+ * 1 / liveNodes, or with traffic-weighted=true this node's fraction of the
+ * cluster's recent request rate (useful behind an uneven load balancer).
+ * Shares add up to about 1, so the cluster admits about one limit in total
+ * during fallback.
+ */
+@Service
+public class ClusterMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    // Weight of the latest interval in the smoothed request rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    // With sharding, membership lives on the shard of this routing key
+    private static final String MEMBERSHIP_ROUTE = "nodes";
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ratelimit.cluster.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ratelimit.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${ratelimit.cluster.node-ttl-ms:10000}")
+    private long nodeTtlMs;
+
+    @Value("${ratelimit.cluster.expected-nodes:1}")
+    private int expectedNodes;
+
+    @Value("${ratelimit.cluster.traffic-weighted:false}")
+    private boolean trafficWeighted;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> heartbeatScript;
+
+    private final LongAdder requests = new LongAdder();
+    private volatile long lastHeartbeatAt;
+    private volatile double requestRate;
+
+    // Last answer from Redis; kept while it is unreachable
+    private volatile int liveNodes;
+    private volatile double clusterRequestRate;
+    private volatile long membershipUpdatedAt;
+
+    @PostConstruct
+    public void init() {
+        heartbeatScript = new DefaultRedisScript<>();
+        heartbeatScript.setScriptText(getHeartbeatScript());
+        heartbeatScript.setResultType(List.class);
+
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        liveNodes = Math.max(1, expectedNodes);
+        lastHeartbeatAt = System.currentTimeMillis();
+        updateShare();
+
+        Gauge.builder("ratelimit.cluster.live.nodes", () -> liveNodes)
+                .description("Live nodes as of the last successful heartbeat")
+                .register(meterRegistry);
+        Gauge.builder("ratelimit.cluster.local.share", localRateLimiter, LocalRateLimiter::getShare)
+                .description("Fraction of each limit this node enforces in fallback")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count requests this node handled, for traffic-weighted shares.
+     */
+    public void recordRequests(int count) {
+        requests.add(count);
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.cluster.heartbeat-interval-ms:2000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long elapsedMs = Math.max(1, now - lastHeartbeatAt);
+        double rate = requests.sumThenReset() * 1000.0 / elapsedMs;
+        requestRate = RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * requestRate;
+        lastHeartbeatAt = now;
+
+        // Only a healthy Redis can tell us who is alive
+        RedisShards.Shard shard = redisShards.shardFor(MEMBERSHIP_ROUTE);
+        if (shard.breaker().getState() != CircuitBreakerState.CLOSED) {
+            return;
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            List<Long> result = shard.template().execute(
+                heartbeatScript,
+                Arrays.asList(redisKeys.group("nodes", "heartbeat"), redisKeys.group("nodes", "traffic")),
+                nodeId,
+                String.valueOf(nodeTtlMs),
+                String.valueOf(Math.round(requestRate))
+            );
+            if (result != null && result.size() == 2) {
+                liveNodes = Math.max(1, result.get(0).intValue());
+                clusterRequestRate = result.get(1);
+                membershipUpdatedAt = now;
+                updateShare();
+            }
+        } catch (Exception e) {
+            logger.debug("Heartbeat failed, keeping last membership ({} nodes): {}", liveNodes, e.getMessage());
+        }
+    }
+
+    private void updateShare() {
+        double share = 1.0 / liveNodes;
+        long myRate = Math.round(requestRate);
+        if (trafficWeighted && liveNodes > 1 && myRate > 0 && clusterRequestRate > 0) {
+            share = myRate / clusterRequestRate;
+        }
+        localRateLimiter.setShare(share);
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            StringRedisTemplate redisTemplate = redisShards.template(MEMBERSHIP_ROUTE);
+            redisTemplate.opsForZSet().remove(redisKeys.group("nodes", "heartbeat"), nodeId);
+            redisTemplate.opsForHash().delete(redisKeys.group("nodes", "traffic"), nodeId);
+        } catch (Exception e) {
+            logger.debug("Could not deregister node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private static String defaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + ":" + ProcessHandle.current().pid();
+        } catch (Exception e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    public int getLiveNodes() {
+        return liveNodes;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("nodeId", nodeId);
+        status.put("liveNodes", liveNodes);
+        status.put("membershipUpdatedAt", membershipUpdatedAt);
+        status.put("trafficWeighted", trafficWeighted);
+        status.put("requestRate", Math.round(requestRate));
+        status.put("clusterRequestRate", Math.round(clusterRequestRate));
+        status.put("localShare", localRateLimiter.getShare());
+        return status;
+    }
+
+    /*
+     * KEYS[1] = heartbeat zset, KEYS[2] = traffic hash
+     * ARGV = node id, node ttl (ms), request rate (req/s)
+     * Scores and the staleness cutoff use the Redis clock, not the nodes'.
+     * Returns {live nodes, summed request rate of live nodes}
+     */
+    private String getHeartbeatScript() {
+        return """
+            local node = ARGV[1]
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local ttl = tonumber(ARGV[2])
+
+            redis.call('ZADD', KEYS[1], now, node)
+            redis.call('HSET', KEYS[2], node, ARGV[3])
+
+            local stale = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', now - ttl)
+            for i = 1, #stale do
+                redis.call('ZREM', KEYS[1], stale[i])
+                redis.call('HDEL', KEYS[2], stale[i])
+            end
+
+            local live = redis.call('ZRANGE', KEYS[1], 0, -1)
+            local rates = redis.call('HMGET', KEYS[2], unpack(live))
+            local total = 0
+            for i = 1, #rates do
+                total = total + (tonumber(rates[i]) or 0)
+            end
+
+            return {#live, total}
+            """;
+    }
+}
@@ -0,0 +1,239 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.algorithm.RateLimitAlgorithmRegistry;
+import com.ratelimitx.core.circuitbreaker.CircuitBreakerState;
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.config.RedisShards;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * Writes what the local fallback admitted back into Redis.
+ *
+ * Without this, every user starts from a fresh shared quota when the
+ * circuit closes and the cluster over-admits during recovery. The ledger
+ * is drained when the circuit closes (and periodically, for fallbacks
+ * taken while it stayed closed), grouped by algorithm, and applied in
+ * pipelined batches of ratelimit.reconcile.batch-size keys, paced to
+ * ratelimit.reconcile.max-keys-per-second so Redis is not hit with a
+ * burst right after recovering. If the circuit leaves CLOSED or a batch
+ * fails, the remainder goes back into the ledger for the next run.
+ *
+ * With sharding, deltas are applied shard by shard, each only while that
+ * shard's circuit is closed.
+ */
+@Service
+public class FallbackReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FallbackReconciler.class);
+
+    /**
+     * Ledger algorithm name for hierarchical rule keys (complete GCRA keys).
+     */
+    static final String HIERARCHY = "hierarchy";
+
+    /**
+     * Ledger algorithm name for bulk-check keys (see GcraService.checkBatch).
+     */
+    static final String BATCH = "batch";
+
+    @Autowired
+    private FallbackLedger ledger;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RateLimitAlgorithmRegistry algorithmRegistry;
+
+    @Autowired
+    private HierarchicalRateLimitService hierarchicalRateLimitService;
+
+    @Autowired
+    private GcraService gcraService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ratelimit.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ratelimit.reconcile.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ratelimit.reconcile.max-keys-per-second:2000}")
+    private int maxKeysPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private Counter appliedKeys;
+    private Counter skippedKeys;
+    private Counter failedBatches;
+
+    @PostConstruct
+    public void init() {
+        appliedKeys = Counter.builder("ratelimit.reconcile.keys")
+                .description("Fallback deltas written back to Redis")
+                .tag("result", "applied")
+                .register(meterRegistry);
+        skippedKeys = Counter.builder("ratelimit.reconcile.keys")
+                .description("Fallback deltas written back to Redis")
+                .tag("result", "stale")
+                .register(meterRegistry);
+        failedBatches = Counter.builder("ratelimit.reconcile.failed.batches")
+                .description("Reconcile batches that failed and were put back")
+                .register(meterRegistry);
+        Gauge.builder("ratelimit.reconcile.pending", ledger, FallbackLedger::size)
+                .description("Keys with fallback admissions not yet written to Redis")
+                .register(meterRegistry);
+
+        for (RedisShards.Shard shard : redisShards.shards()) {
+            shard.breaker().addStateListener(state -> {
+                if (state == CircuitBreakerState.CLOSED) {
+                    trigger();
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.reconcile.interval-ms:5000}")
+    public void flushPending() {
+        trigger();
+    }
+
+    /**
+     * Start a reconcile run in the background unless one is running.
+     */
+    public void trigger() {
+        if (!enabled || ledger.size() == 0
+                || redisShards.shards().stream().noneMatch(FallbackReconciler::isClosed)) {
+            return;
+        }
+        if (running.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("fallback-reconciler").start(() -> {
+                try {
+                    reconcile();
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    private void reconcile() {
+        List<FallbackLedger.Delta> deltas = ledger.drain();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        logger.info("Reconciling fallback admissions of {} keys into Redis", deltas.size());
+
+        List<FallbackLedger.Delta> remaining = new ArrayList<>();
+        redisShards.groupByShard(deltas, FallbackReconciler::routeOf)
+                .forEach((shard, onShard) -> reconcile(shard, onShard, remaining));
+
+        if (!remaining.isEmpty()) {
+            ledger.restore(remaining);
+        }
+    }
+
+    private void reconcile(RedisShards.Shard shard, List<FallbackLedger.Delta> deltas,
+                           List<FallbackLedger.Delta> remaining) {
+        Map<String, List<FallbackLedger.Delta>> byAlgorithm = new LinkedHashMap<>();
+        for (FallbackLedger.Delta delta : deltas) {
+            byAlgorithm.computeIfAbsent(delta.algorithm(), a -> new ArrayList<>()).add(delta);
+        }
+
+        boolean stopped = false;
+        for (Map.Entry<String, List<FallbackLedger.Delta>> entry : byAlgorithm.entrySet()) {
+            List<FallbackLedger.Delta> group = entry.getValue();
+            for (int from = 0; from < group.size(); from += batchSize) {
+                List<FallbackLedger.Delta> batch = group.subList(from, Math.min(group.size(), from + batchSize));
+
+                if (stopped || !isClosed(shard)) {
+                    stopped = true;
+                    remaining.addAll(batch);
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    int applied = apply(entry.getKey(), batch);
+                    appliedKeys.increment(applied);
+                    skippedKeys.increment(batch.size() - applied);
+                } catch (Exception e) {
+                    failedBatches.increment();
+                    logger.warn("Reconcile batch for {} on {} failed, retrying later: {}",
+                            entry.getKey(), shard.name(), e.getMessage());
+                    stopped = true;
+                    remaining.addAll(batch);
+                    continue;
+                }
+                pace(batch.size(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Hierarchy keys all live on one shard; everything else by user id
+    private static String routeOf(FallbackLedger.Delta delta) {
+        return HIERARCHY.equals(delta.algorithm()) ? RedisShards.HIERARCHY_ROUTE : delta.key();
+    }
+
+    private static boolean isClosed(RedisShards.Shard shard) {
+        return shard.breaker().getState() == CircuitBreakerState.CLOSED;
+    }
+
+    private int apply(String algorithm, List<FallbackLedger.Delta> batch) {
+        if (HIERARCHY.equals(algorithm)) {
+            return hierarchicalRateLimitService.reconcile(batch);
+        }
+        if (BATCH.equals(algorithm)) {
+            return gcraService.reconcileBatch(batch);
+        }
+        if (!algorithmRegistry.contains(algorithm)) {
+            return 0;
+        }
+        return algorithmRegistry.resolve(algorithm).reconcile(batch);
+    }
+
+    // Keep to max-keys-per-second across batches
+    private void pace(int keys, long elapsedNanos) {
+        long budgetNanos = keys * 1_000_000_000L / Math.max(1, maxKeysPerSecond);
+        long sleepNanos = budgetNanos - elapsedNanos;
+        if (sleepNanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", running.get());
+        status.put("pendingKeys", ledger.size());
+        status.put("droppedAdmissions", ledger.getDropped());
+        status.put("appliedKeys", (long) appliedKeys.count());
+        status.put("staleKeys", (long) skippedKeys.count());
+        status.put("failedBatches", (long) failedBatches.count());
+        return status;
+    }
+}
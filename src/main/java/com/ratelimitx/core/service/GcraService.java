@@ -0,0 +1,275 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Generic cell rate algorithm.
+ *
+ * Each user is one string key ("gcra:{user}") holding the theoretical
+ * arrival time (TAT) in epoch ms. A limit of N per window means one request
+ * every window/N ms on average, with bursts of up to N. An allowed request
+ * moves the TAT forward and writes it with a single SET PX; a denied request
+ * writes nothing. The key expires once the user is fully replenished.
+ */
+@Service
+public class GcraService {
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> gcraScript;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> gcraBatchScript;
+
+    @PostConstruct
+    public void init() {
+        gcraScript = new DefaultRedisScript<>();
+        gcraScript.setScriptText(getLuaScript());
+        gcraScript.setResultType(List.class);
+
+        gcraBatchScript = new DefaultRedisScript<>();
+        gcraBatchScript.setScriptText(getBatchLuaScript());
+        gcraBatchScript.setResultType(List.class);
+    }
+
+    public RateLimitResult checkRateLimit(String userId) {
+        return checkRateLimit(userId, config.getMaxRequests(), config.getWindowSizeSeconds());
+    }
+
+    public RateLimitResult checkRateLimit(String userId, int limit, int windowSeconds) {
+        return execute(userId, limit, windowSeconds, 1);
+    }
+
+    /**
+     * Current state without consuming.
+     */
+    public RateLimitResult getStatus(String userId) {
+        return execute(userId, config.getMaxRequests(), config.getWindowSizeSeconds(), 0);
+    }
+
+    /**
+     * Non-blocking variant of checkRateLimit, same script and result.
+     */
+    public Mono<RateLimitResult> checkRateLimitReactive(String userId, int limit, int windowSeconds) {
+        return ReactiveScripts.eval(redisShards.reactiveTemplate(userId), gcraScript,
+                        Arrays.asList(redisKeys.gcra(userId)),
+                        args(limit, windowSeconds, 1))
+                .map(result -> toResult(result, limit, windowSeconds));
+    }
+
+    private RateLimitResult execute(String userId, int limit, int windowSeconds, int cost) {
+        @SuppressWarnings("unchecked")
+        List<Long> result = redisShards.template(userId).execute(
+            gcraScript,
+            Arrays.asList(redisKeys.gcra(userId)),
+            args(limit, windowSeconds, cost)
+        );
+
+        return toResult(result, limit, windowSeconds);
+    }
+
+    private Object[] args(int limit, int windowSeconds, int cost) {
+        return new Object[] {
+            String.valueOf(limit),
+            String.valueOf(windowSeconds * 1000L),
+            String.valueOf(System.currentTimeMillis()),
+            String.valueOf(cost)
+        };
+    }
+
+    private RateLimitResult toResult(List<Long> result, int limit, int windowSeconds) {
+        if (result == null || result.isEmpty()) {
+            return new RateLimitResult(false, limit, 0, windowSeconds * 1000L);
+        }
+
+        boolean allowed = result.get(0) == 1;
+        int remaining = result.get(1).intValue();
+        long resetMs = result.get(2);
+
+        return new RateLimitResult(allowed, limit, remaining, resetMs);
+    }
+
+    /**
+     * Independent checks for many keys in one script call; each key is
+     * consumed by its own cost if (and only if) that key admits it. Keys
+     * live under "batch:", not with the per-user GCRA state.
+     */
+    public List<RateLimitResult> checkBatch(List<Check> checks) {
+        List<String> routes = new ArrayList<>(checks.size());
+        List<String> keys = new ArrayList<>(checks.size());
+        String[] args = new String[1 + checks.size() * 3];
+        args[0] = String.valueOf(System.currentTimeMillis());
+
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            routes.add(check.key());
+            keys.add(redisKeys.batch(check.key()));
+            args[1 + i * 3] = String.valueOf(check.limit());
+            args[2 + i * 3] = String.valueOf(check.windowSeconds() * 1000L);
+            args[3 + i * 3] = String.valueOf(check.cost());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Long> flat = SlotBatches.eval(redisShards, redisKeys, gcraBatchScript, routes, keys, args, 1, 3);
+
+        List<RateLimitResult> results = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            if (flat == null) {
+                results.add(new RateLimitResult(false, check.limit(), 0, check.windowSeconds() * 1000L));
+                continue;
+            }
+            boolean allowed = flat.get(i * 3) == 1;
+            results.add(new RateLimitResult(allowed, check.limit(), flat.get(i * 3 + 1).intValue(), flat.get(i * 3 + 2)));
+        }
+        return results;
+    }
+
+    public record Check(String key, int limit, int windowSeconds, int cost) {}
+
+    /**
+     * Push the users' arrival times forward by what the local fallback
+     * admitted (see FallbackReconciler), one pipeline per shard. Admissions older
+     * than a window are skipped. Returns the number of keys updated.
+     */
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return reconcile(deltas, redisKeys::gcra, UnaryOperator.identity(), config.getMaxRequests());
+    }
+
+    /**
+     * Same for bulk-check keys (see checkBatch).
+     */
+    public int reconcileBatch(List<FallbackLedger.Delta> deltas) {
+        return reconcile(deltas, redisKeys::batch, UnaryOperator.identity(), config.getMaxRequests());
+    }
+
+    // Shared with HierarchicalRateLimitService, whose rule keys are complete
+    // and all routed to one shard
+    int reconcile(List<FallbackLedger.Delta> deltas, UnaryOperator<String> keyOf,
+                  UnaryOperator<String> routeOf, int defaultLimit) {
+        long now = System.currentTimeMillis();
+        List<FallbackLedger.Delta> current = deltas.stream()
+                .filter(delta -> now - delta.lastAt() < delta.windowSeconds() * 1000L)
+                .toList();
+        if (current.isEmpty()) {
+            return 0;
+        }
+
+        redisShards.groupByShard(current, delta -> routeOf.apply(delta.key())).forEach((shard, onShard) ->
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (FallbackLedger.Delta delta : onShard) {
+                        int limit = delta.limit() == FallbackLedger.DEFAULT_LIMIT ? defaultLimit : delta.limit();
+                        conn.eval(RECONCILE_SCRIPT, ReturnType.INTEGER, 1, keyOf.apply(delta.key()),
+                                String.valueOf(limit), String.valueOf(delta.windowSeconds() * 1000L),
+                                String.valueOf(now), String.valueOf(delta.count()));
+                    }
+                    return null;
+                }));
+        return current.size();
+    }
+
+    private String getLuaScript() {
+        return GCRA_FUNCTION + """
+            return gcra(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4]))
+            """;
+    }
+
+    // KEYS = one per check, ARGV = now, then (limit, window_ms, cost) per key
+    private String getBatchLuaScript() {
+        return GCRA_FUNCTION + """
+            local now = tonumber(ARGV[1])
+            local out = {}
+            for i = 1, #KEYS do
+                local base = (i - 1) * 3 + 1
+                local r = gcra(KEYS[i], tonumber(ARGV[base + 1]), tonumber(ARGV[base + 2]), now, tonumber(ARGV[base + 3]))
+                out[#out + 1] = r[1]
+                out[#out + 1] = r[2]
+                out[#out + 1] = r[3]
+            end
+            return out
+            """;
+    }
+
+    private static final String GCRA_FUNCTION = """
+            local function gcra(key, limit, window_ms, now, cost)
+                if limit <= 0 then
+                    return {0, 0, window_ms}
+                end
+
+                -- One request every emission_ms; up to window_ms of credit (a burst of limit)
+                local emission_ms = window_ms / limit
+
+                local tat = tonumber(redis.call('GET', key) or now)
+                if tat < now then
+                    tat = now
+                end
+
+                -- Round up so accumulated error can only under-admit
+                local new_tat = math.ceil(tat + emission_ms * cost)
+                local allow_at = new_tat - window_ms
+
+                if now < allow_at then
+                    -- Denied: retry once enough credit has accrued, nothing written
+                    return {0, 0, allow_at - now}
+                end
+
+                if cost > 0 then
+                    redis.call('SET', key, new_tat, 'PX', new_tat - now)
+                end
+
+                local remaining = math.floor((window_ms - (new_tat - now)) / emission_ms)
+                return {1, remaining, new_tat - now}
+            end
+            """;
+
+    // Like GCRA_FUNCTION with the admission check removed; at most a full window of debt
+    private static final String RECONCILE_SCRIPT = """
+            local limit = tonumber(ARGV[1])
+            local window_ms = tonumber(ARGV[2])
+            local now = tonumber(ARGV[3])
+            local cost = tonumber(ARGV[4])
+            if limit <= 0 then
+                return 0
+            end
+
+            local tat = tonumber(redis.call('GET', KEYS[1]) or now)
+            if tat < now then
+                tat = now
+            end
+            local new_tat = math.min(math.ceil(tat + window_ms / limit * cost), now + window_ms)
+            if new_tat > now then
+                redis.call('SET', KEYS[1], new_tat, 'PX', new_tat - now)
+            end
+            return new_tat - now
+            """;
+}
@@ -0,0 +1,82 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Space-Saving sketch of the most frequent keys in a stream.
+ *
+ * Memory is fixed at {@code capacity} entries. offer() never blocks: if
+ * another thread holds the lock the observation is skipped, which turns
+ * into sampling under contention; heavy hitters still dominate the sample.
+ */
+class HeavyHitterTracker {
+
+    private final int capacity;
+    private final Map<String, long[]> counts;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    HeavyHitterTracker(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counts = new HashMap<>(this.capacity * 2);
+    }
+
+    void offer(String key) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            long[] count = counts.get(key);
+            if (count != null) {
+                count[0]++;
+                return;
+            }
+            if (counts.size() < capacity) {
+                counts.put(key, new long[] {1});
+                return;
+            }
+
+            // Replace the smallest counter; the newcomer inherits its count
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                if (entry.getValue()[0] < min) {
+                    min = entry.getValue()[0];
+                    minKey = entry.getKey();
+                }
+            }
+            counts.remove(minKey);
+            counts.put(key, new long[] {min + 1});
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The n highest counts, then halve everything so the view follows
+     * recent traffic rather than all-time totals.
+     */
+    Set<String> topAndDecay(int n) {
+        lock.lock();
+        try {
+            List<Map.Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+            Set<String> top = new HashSet<>();
+            for (int i = 0; i < Math.min(n, entries.size()); i++) {
+                top.add(entries.get(i).getKey());
+            }
+
+            counts.values().removeIf(count -> (count[0] >>= 1) == 0);
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
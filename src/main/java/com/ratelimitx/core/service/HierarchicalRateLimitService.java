@@ -0,0 +1,184 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.LimitRule;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Checks every rule of a request in one Lua call, all-or-nothing.
+ *
+ * Each rule is a GCRA key (see GcraService). The script first evaluates
+ * all rules; only if every one admits the request are the new arrival
+ * times written. A denied request consumes nothing anywhere.
+ *
+ * The returned result is the most restrictive one: the denying rule that
+ * clears last, or when allowed, the rule with the fewest requests left.
+ */
+@Service
+public class HierarchicalRateLimitService {
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private GcraService gcraService;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> hierarchyScript;
+
+    @PostConstruct
+    public void init() {
+        hierarchyScript = new DefaultRedisScript<>();
+        hierarchyScript.setScriptText(getLuaScript());
+        hierarchyScript.setResultType(List.class);
+    }
+
+    public RateLimitResult check(List<LimitRule> rules) {
+        RateLimitResult rejected = rejectNonPositive(rules);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Long> flat = redisShards.template(RedisShards.HIERARCHY_ROUTE)
+                .execute(hierarchyScript, keys(rules), args(rules));
+
+        return toResult(flat, rules);
+    }
+
+    /**
+     * Non-blocking variant of check, same script and result.
+     */
+    public Mono<RateLimitResult> checkReactive(List<LimitRule> rules) {
+        RateLimitResult rejected = rejectNonPositive(rules);
+        if (rejected != null) {
+            return Mono.just(rejected);
+        }
+        return ReactiveScripts.eval(redisShards.reactiveTemplate(RedisShards.HIERARCHY_ROUTE), hierarchyScript, keys(rules), args(rules))
+                .map(flat -> toResult(flat, rules));
+    }
+
+    /**
+     * Apply fallback admissions to the rule keys; they are GCRA keys, so
+     * this is GcraService's reconcile on the complete key names.
+     */
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        return gcraService.reconcile(deltas, UnaryOperator.identity(), key -> RedisShards.HIERARCHY_ROUTE, 0);
+    }
+
+    private RateLimitResult rejectNonPositive(List<LimitRule> rules) {
+        for (LimitRule rule : rules) {
+            if (rule.limit() <= 0) {
+                return new RateLimitResult(false, rule.limit(), 0, rule.windowSeconds() * 1000L);
+            }
+        }
+        return null;
+    }
+
+    private List<String> keys(List<LimitRule> rules) {
+        List<String> keys = new ArrayList<>(rules.size());
+        for (LimitRule rule : rules) {
+            keys.add(rule.key());
+        }
+        return keys;
+    }
+
+    private Object[] args(List<LimitRule> rules) {
+        String[] args = new String[1 + rules.size() * 2];
+        args[0] = String.valueOf(System.currentTimeMillis());
+
+        for (int i = 0; i < rules.size(); i++) {
+            LimitRule rule = rules.get(i);
+            args[1 + i * 2] = String.valueOf(rule.limit());
+            args[2 + i * 2] = String.valueOf(rule.windowSeconds() * 1000L);
+        }
+        return args;
+    }
+
+    private RateLimitResult toResult(List<Long> flat, List<LimitRule> rules) {
+        if (flat == null || flat.isEmpty()) {
+            LimitRule first = rules.get(0);
+            return new RateLimitResult(false, first.limit(), 0, first.windowSeconds() * 1000L);
+        }
+
+        RateLimitResult mostRestrictive = null;
+        for (int i = 0; i < rules.size(); i++) {
+            boolean allowed = flat.get(i * 3) == 1;
+            int remaining = flat.get(i * 3 + 1).intValue();
+            long reset = flat.get(i * 3 + 2);
+            RateLimitResult result = new RateLimitResult(allowed, rules.get(i).limit(), remaining, reset);
+
+            if (mostRestrictive == null || moreRestrictive(result, mostRestrictive)) {
+                mostRestrictive = result;
+            }
+        }
+        return mostRestrictive;
+    }
+
+    private boolean moreRestrictive(RateLimitResult a, RateLimitResult b) {
+        if (a.isAllowed() != b.isAllowed()) {
+            return !a.isAllowed();
+        }
+        if (!a.isAllowed()) {
+            return a.getResetTime() > b.getResetTime();
+        }
+        return a.getRemaining() < b.getRemaining();
+    }
+
+    // KEYS = one per rule, ARGV = now, then (limit, window_ms) per rule
+    private String getLuaScript() {
+        return """
+            local now = tonumber(ARGV[1])
+            local new_tats = {}
+            local out = {}
+            local denied = false
+
+            for i = 1, #KEYS do
+                local limit = tonumber(ARGV[i * 2])
+                local window_ms = tonumber(ARGV[i * 2 + 1])
+                local emission_ms = window_ms / limit
+
+                local tat = tonumber(redis.call('GET', KEYS[i]) or now)
+                if tat < now then
+                    tat = now
+                end
+                local new_tat = math.ceil(tat + emission_ms)
+                local allow_at = new_tat - window_ms
+
+                if now < allow_at then
+                    denied = true
+                    out[#out + 1] = 0
+                    out[#out + 1] = 0
+                    out[#out + 1] = allow_at - now
+                else
+                    new_tats[i] = new_tat
+                    out[#out + 1] = 1
+                    out[#out + 1] = math.floor((window_ms - (new_tat - now)) / emission_ms)
+                    out[#out + 1] = new_tat - now
+                end
+            end
+
+            -- All or nothing: consume only if every rule admits
+            if not denied then
+                for i = 1, #KEYS do
+                    redis.call('SET', KEYS[i], new_tats[i], 'PX', new_tats[i] - now)
+                end
+            end
+
+            return out
+            """;
+    }
+}
@@ -0,0 +1,280 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.circuitbreaker.CircuitBreakerState;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+
+
+/**
+ * Bulk key purges as background jobs.
+ *
+ * A job walks the keyspace of every shard with SCAN (see KeyScanner) and
+ * removes the matches with UNLINK in batches of ratelimit.purge.batch-size,
+ * so Redis frees the memory off its main thread. Matched keys are paced to
+ * ratelimit.purge.max-keys-per-second, one job runs at a time, and a job
+ * stops (FAILED) as soon as a shard's circuit leaves CLOSED, so a purge
+ * never adds load to a Redis that is already struggling. Jobs report
+ * their progress and can be cancelled between keys.
+ */
+@Service
+public class KeyPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyPurgeService.class);
+
+    // Finished jobs kept for GET /admin/purge
+    private static final int MAX_FINISHED_JOBS = 20;
+
+    // Key prefix of each algorithm's per-user keys (see RedisKeys)
+    private static final Map<String, String> ALGORITHM_PREFIXES = Map.of(
+            "fixed-window", "rate",
+            "token-bucket", "bucket",
+            "sliding-window", "sliding",
+            "gcra", "gcra",
+            "token-lease", "lease",
+            // Bulk-check keys (POST /api/check/batch)
+            "batch", "batch"
+    );
+
+    @Autowired
+    private KeyScanner keyScanner;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Value("${ratelimit.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${ratelimit.purge.max-keys-per-second:5000}")
+    private int maxKeysPerSecond;
+
+    private final Map<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+    private volatile PurgeJob running;
+
+    /**
+     * Start purging the keys of one algorithm, of one tenant, or under a
+     * key prefix (exactly one of them).
+     *
+     * @throws IllegalArgumentException if not exactly one scope is given
+     * @throws IllegalStateException if a purge is already running
+     */
+    public synchronized PurgeJob start(String algorithm, String tenant, String prefix) {
+        String pattern = pattern(algorithm, tenant, prefix);
+        if (running != null && running.getStatus() == Status.RUNNING) {
+            throw new IllegalStateException("Purge " + running.getId() + " is still running");
+        }
+
+        PurgeJob job = new PurgeJob(UUID.randomUUID().toString(), pattern);
+        jobs.put(job.getId(), job);
+        running = job;
+        trimFinished();
+
+        Thread.ofVirtual().name("key-purge-" + job.getId()).start(() -> run(job));
+        logger.info("Purge {} started for {}", job.getId(), pattern);
+        return job;
+    }
+
+    public PurgeJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public List<PurgeJob> list() {
+        List<PurgeJob> all = new ArrayList<>(jobs.values());
+        all.sort(Comparator.comparingLong(PurgeJob::getStartedAt).reversed());
+        return all;
+    }
+
+    /**
+     * Ask a job to stop; keys already removed stay removed.
+     */
+    public PurgeJob cancel(String jobId) {
+        PurgeJob job = jobs.get(jobId);
+        if (job != null) {
+            job.cancelled = true;
+        }
+        return job;
+    }
+
+    private String pattern(String algorithm, String tenant, String prefix) {
+        int scopes = (algorithm != null ? 1 : 0) + (tenant != null ? 1 : 0) + (prefix != null ? 1 : 0);
+        if (scopes != 1) {
+            throw new IllegalArgumentException("Give exactly one of algorithm, tenant or prefix");
+        }
+        if (algorithm != null) {
+            String keyPrefix = ALGORITHM_PREFIXES.get(algorithm);
+            if (keyPrefix == null) {
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+            }
+            return keyPrefix + ":*";
+        }
+        if (tenant != null) {
+            // Per-user keys do not carry the tenant; only its hierarchical rule does
+            return escape(redisKeys.hierarchy("tenant:" + tenant));
+        }
+        if (prefix.isBlank()) {
+            throw new IllegalArgumentException("Prefix must not be empty");
+        }
+        return escape(prefix) + "*";
+    }
+
+    // SCAN MATCH is a glob; user-supplied parts match literally
+    private static String escape(String literal) {
+        return literal.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+
+    private void run(PurgeJob job) {
+        try {
+            for (RedisShards.Shard shard : redisShards.shards()) {
+                if (!purge(shard, job)) {
+                    break;
+                }
+            }
+            if (job.status == Status.RUNNING) {
+                job.status = job.cancelled ? Status.CANCELLED : Status.COMPLETED;
+            }
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+            logger.info("Purge {} {}: {} keys matched, {} removed",
+                    job.getId(), job.status, job.matched.get(), job.removed.get());
+        }
+    }
+
+    // Returns false if the job should not go on to the next shard
+    private boolean purge(RedisShards.Shard shard, PurgeJob job) {
+        List<String> batch = new ArrayList<>(batchSize);
+        long[] batchStart = {System.nanoTime()};
+
+        boolean completed = keyScanner.scan(shard.template(), job.getPattern(), key -> {
+            if (job.cancelled) {
+                return false;
+            }
+            job.matched.incrementAndGet();
+            batch.add(key);
+            if (batch.size() < batchSize) {
+                return true;
+            }
+            if (!unlink(shard, batch, job)) {
+                return false;
+            }
+            pace(batchSize, System.nanoTime() - batchStart[0]);
+            batchStart[0] = System.nanoTime();
+            return true;
+        });
+
+        if (!batch.isEmpty() && !unlink(shard, batch, job)) {
+            return false;
+        }
+        return completed;
+    }
+
+    private boolean unlink(RedisShards.Shard shard, List<String> batch, PurgeJob job) {
+        if (shard.breaker().getState() != CircuitBreakerState.CLOSED) {
+            job.fail("Circuit not closed for " + shard.name());
+            batch.clear();
+            return false;
+        }
+        Long removed = shard.template().unlink(batch);
+        job.removed.addAndGet(removed != null ? removed : 0);
+        batch.clear();
+        return true;
+    }
+
+    // Keep to max-keys-per-second across batches
+    private void pace(int keys, long elapsedNanos) {
+        long budgetNanos = keys * 1_000_000_000L / Math.max(1, maxKeysPerSecond);
+        long sleepNanos = budgetNanos - elapsedNanos;
+        if (sleepNanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void trimFinished() {
+        List<PurgeJob> finished = list().stream()
+                .filter(job -> job.getStatus() != Status.RUNNING)
+                .toList();
+        for (int i = MAX_FINISHED_JOBS; i < finished.size(); i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    public static final class PurgeJob {
+        private final String id;
+        private final String pattern;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong matched = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+        private volatile Status status = Status.RUNNING;
+        private volatile boolean cancelled;
+        private volatile long finishedAt;
+        private volatile String error;
+
+        PurgeJob(String id, String pattern) {
+            this.id = id;
+            this.pattern = pattern;
+        }
+
+        void fail(String reason) {
+            error = reason;
+            status = Status.FAILED;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("jobId", id);
+            map.put("pattern", pattern);
+            map.put("status", status.name());
+            map.put("keysMatched", matched.get());
+            map.put("keysRemoved", removed.get());
+            map.put("cancelRequested", cancelled);
+            map.put("startedAt", startedAt);
+            map.put("finishedAt", finishedAt);
+            map.put("elapsedMs", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+            if (error != null) {
+                map.put("error", error);
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ratelimitx.core.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+
+
+/**
+ * Incremental key iteration for admin tooling, in place of KEYS.
+ *
+ * SCAN walks the keyspace in small steps instead of blocking the server
+ * for one full pass. In cluster mode every master owns part of the
+ * keyspace, so the scan runs on each master in turn (replicas are skipped,
+ * they hold the same keys). With sharding it runs on each shard in turn.
+ */
+@Service
+public class KeyScanner {
+
+    private static final int SCAN_COUNT = 1000;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    public void scan(String pattern, Consumer<String> action) {
+        for (RedisShards.Shard shard : redisShards.shards()) {
+            scan(shard.template(), pattern, key -> {
+                action.accept(key);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Scan one shard until action returns false. Returns whether the scan
+     * ran to the end.
+     */
+    public boolean scan(StringRedisTemplate redisTemplate, String pattern, Predicate<String> action) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build();
+
+        if (!redisKeys.isClusterMode()) {
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    if (!action.test(cursor.next())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        try (RedisClusterConnection cluster = redisTemplate.getRequiredConnectionFactory().getClusterConnection()) {
+            for (RedisClusterNode node : cluster.clusterGetNodes()) {
+                if (!node.isMaster()) {
+                    continue;
+                }
+                try (Cursor<byte[]> cursor = cluster.scan(node, options)) {
+                    while (cursor.hasNext()) {
+                        if (!action.test(new String(cursor.next(), StandardCharsets.UTF_8))) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    public Set<String> keys(String pattern) {
+        Set<String> keys = new HashSet<>();
+        scan(pattern, keys::add);
+        return keys;
+    }
+}
@@ -0,0 +1,251 @@
+package com.ratelimitx.core.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.entity.User;
+import com.ratelimitx.core.repository.UserRepository;
+import com.ratelimitx.core.security.AuthenticatedUser;
+
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * Per-user rate limits: in-process cache (L1), Redis (L2), Postgres.
+ *
+ * Postgres (users.rate_limit, else the role default) is the source of
+ * truth; the user-limits hash is the shared copy, filled on load. The
+ * request path only reads L1: on a miss or an expired entry it gets the
+ * caller's fallback (the limit in the token, or the default) while the
+ * entry is loaded in the background, so no request waits on Redis or the
+ * database. Users without a database row are cached as "no override" for
+ * negative-ttl-ms. At cache-max-size, each new entry evicts the entry
+ * closest to expiry out of a small sample.
+ *
+ * setLimit() writes Postgres, then Redis, then publishes the user id on
+ * INVALIDATION_CHANNEL; every node drops and reloads its entry, so a
+ * change is seen cluster-wide within milliseconds. cache-ttl-ms only
+ * bounds how long a missed message can leave an entry stale.
+ */
+@Service
+public class LimitResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LimitResolver.class);
+
+    static final String INVALIDATION_CHANNEL = "ratelimit:limits:invalidate";
+
+    // Entries looked at to pick one to evict when the cache is full
+    private static final int EVICTION_SAMPLE = 16;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    private StringRedisTemplate redis;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${ratelimit.limits.cache-ttl-ms:300000}")
+    private long cacheTtlMs;
+
+    @Value("${ratelimit.limits.negative-ttl-ms:60000}")
+    private long negativeTtlMs;
+
+    @Value("${ratelimit.limits.cache-max-size:100000}")
+    private int cacheMaxSize;
+
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+
+    // Per user, bumped by every invalidation; a load that raced one of its
+    // user's is not cached. Entries of users not loading are swept.
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public int resolve(AuthenticatedUser user) {
+        return resolve(user.getUsername(), user.getRateLimit());
+    }
+
+    /**
+     * The user's limit, or fallback when the user has no limit of its own
+     * or is not cached yet. Never blocks.
+     */
+    public int resolve(String userId, int fallback) {
+        Entry entry = cache.get(userId);
+        if (entry == null || System.currentTimeMillis() >= entry.expiresAt()) {
+            misses.incrementAndGet();
+            loadAsync(userId);
+        } else {
+            hits.incrementAndGet();
+        }
+        // An expired entry is still served until its reload lands
+        return entry != null && entry.limit() != null ? entry.limit() : fallback;
+    }
+
+    /**
+     * Set a user's limit in Postgres and Redis and invalidate it on every
+     * node. Users without a database row only get the Redis copy.
+     */
+    public void setLimit(String userId, int limit) {
+        Optional<User> user = userRepository.findByUsername(userId);
+        user.ifPresent(u -> {
+            u.setRateLimit(limit);
+            userRepository.save(u);
+        });
+        redisShards.template(userId).opsForHash().put(redisKeys.userLimits(userId), userId, String.valueOf(limit));
+        invalidate(userId);
+    }
+
+    /**
+     * Drop the user's entry on every node (e.g. after it was created).
+     */
+    public void invalidate(String userId) {
+        evict(userId);
+        try {
+            redis.convertAndSend(INVALIDATION_CHANNEL, userId);
+        } catch (Exception e) {
+            logger.warn("Could not publish limit invalidation for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void evict(String userId) {
+        invalidations.incrementAndGet();
+        generations.merge(userId, 1L, Long::sum);
+        if (cache.remove(userId) != null) {
+            loadAsync(userId);
+        }
+    }
+
+    private void loadAsync(String userId) {
+        if (!loading.add(userId)) {
+            return;
+        }
+        Thread.ofVirtual().name("limit-load").start(() -> {
+            try {
+                long generation = generations.getOrDefault(userId, 0L);
+                Entry loaded = load(userId);
+                if (generations.getOrDefault(userId, 0L) == generation) {
+                    if (cache.size() >= cacheMaxSize && !cache.containsKey(userId)) {
+                        evictOne();
+                    }
+                    cache.put(userId, loaded);
+                }
+            } catch (Exception e) {
+                // Keep serving the last entry (or the fallback) and retry on a later request
+                loadFailures.incrementAndGet();
+                logger.debug("Could not load limit of {}: {}", userId, e.getMessage());
+            } finally {
+                loading.remove(userId);
+            }
+        });
+    }
+
+    // Full: drop the sampled entry closest to expiry, so new users are still
+    // cached (and stop reloading) instead of being refused
+    private void evictOne() {
+        String victim = null;
+        long soonest = Long.MAX_VALUE;
+        int sampled = 0;
+        for (Map.Entry<String, Entry> candidate : cache.entrySet()) {
+            if (candidate.getValue().expiresAt() < soonest) {
+                soonest = candidate.getValue().expiresAt();
+                victim = candidate.getKey();
+            }
+            if (++sampled >= EVICTION_SAMPLE) {
+                break;
+            }
+        }
+        if (victim != null && cache.remove(victim) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    private Entry load(String userId) {
+        loads.incrementAndGet();
+        StringRedisTemplate template = redisShards.template(userId);
+
+        Object shared = null;
+        try {
+            shared = template.opsForHash().get(redisKeys.userLimits(userId), userId);
+        } catch (Exception e) {
+            logger.debug("Limit of {} not read from Redis, using the database: {}", userId, e.getMessage());
+        }
+        if (shared != null) {
+            return new Entry(Integer.parseInt((String) shared), System.currentTimeMillis() + cacheTtlMs);
+        }
+
+        Optional<User> user = userRepository.findByUsername(userId);
+        if (user.isEmpty()) {
+            return new Entry(null, System.currentTimeMillis() + negativeTtlMs);
+        }
+        int limit = user.get().getRateLimit() != null
+                ? user.get().getRateLimit()
+                : user.get().getRole().getDefaultRateLimit();
+        try {
+            template.opsForHash().put(redisKeys.userLimits(userId), userId, String.valueOf(limit));
+        } catch (Exception e) {
+            logger.debug("Limit of {} not written back to Redis: {}", userId, e.getMessage());
+        }
+        return new Entry(limit, System.currentTimeMillis() + cacheTtlMs);
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.limits.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        cache.entrySet().removeIf(entry -> now >= entry.getValue().expiresAt());
+        generations.keySet().removeIf(userId -> !loading.contains(userId));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cachedUsers", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("loads", loads.get());
+        stats.put("loadFailures", loadFailures.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    // limit == null: the user has no limit of its own
+    private record Entry(Integer limit, long expiresAt) {}
+}
@@ -0,0 +1,83 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.model.LimitRule;
+import com.ratelimitx.core.security.AuthenticatedUser;
+
+
+/**
+ * Resolves one request into its ordered set of limit rules:
+ * global, tenant, endpoint, then user. A dimension with a limit of 0 (or
+ * without a tenant) is not enforced; the user rule always is.
+ */
+@Component
+public class LimitRuleResolver {
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    private LimitResolver limitResolver;
+
+    @Value("${ratelimit.hierarchy.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ratelimit.hierarchy.window-seconds:60}")
+    private int windowSeconds;
+
+    @Value("${ratelimit.hierarchy.global-limit:0}")
+    private int globalLimit;
+
+    @Value("${ratelimit.hierarchy.tenant-limit:0}")
+    private int tenantLimit;
+
+    @Value("${ratelimit.hierarchy.endpoint-limit:0}")
+    private int endpointLimit;
+
+    @Value("${ratelimit.hierarchy.tenant-header:X-Tenant-Id}")
+    private String tenantHeader;
+
+    // Only when a gateway that authenticates callers sets (and strips) the header
+    @Value("${ratelimit.hierarchy.trust-tenant-header:false}")
+    private boolean trustTenantHeader;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getTenantHeader() {
+        return tenantHeader;
+    }
+
+    public boolean isTenantHeaderTrusted() {
+        return trustTenantHeader;
+    }
+
+    /**
+     * @param tenant   tenant id from the verified token (or a trusted gateway header), may be null
+     * @param endpoint e.g. "GET /api/data"
+     */
+    public List<LimitRule> resolve(AuthenticatedUser user, String tenant, String endpoint) {
+        List<LimitRule> rules = new ArrayList<>(4);
+
+        if (globalLimit > 0) {
+            rules.add(new LimitRule("global", redisKeys.hierarchy("global"), globalLimit, windowSeconds));
+        }
+        if (tenantLimit > 0 && tenant != null && !tenant.isBlank()) {
+            rules.add(new LimitRule("tenant", redisKeys.hierarchy("tenant:" + tenant), tenantLimit, windowSeconds));
+        }
+        if (endpointLimit > 0 && endpoint != null) {
+            rules.add(new LimitRule("endpoint", redisKeys.hierarchy("endpoint:" + endpoint), endpointLimit, windowSeconds));
+        }
+        rules.add(new LimitRule(LimitRule.USER, redisKeys.hierarchy("user:" + user.getUsername()), limitResolver.resolve(user), windowSeconds));
+
+        return rules;
+    }
+}
@@ -3,21 +3,47 @@ package com.ratelimitx.core.service;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 
 
 
 
+/**
+ * Hourly / daily / per-user request metrics stored in Redis hashes.
+ *
+ * Writes are write-behind: recordRequest() only bumps striped in-memory
+ * counters keyed by (time bucket, user, field). flush() pushes the deltas
+ * on a short interval as one pipelined batch and sets each key's TTL once
+ * per bucket. Reads go to Redis and lag by at most one flush interval.
+ *
+ * Per-user counters are dropped from memory as soon as their deltas and
+ * TTL are written, so memory and flush work follow the users active in
+ * the last interval, not all users of the day; a returning user costs
+ * one more EXPIRE. A dropped entry is drained once more on the next flush
+ * in case a request was still adding to it.
+ */
 @Service
 public class MetricsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MetricsService.class);
+
     @Autowired
     StringRedisTemplate redis;
 
@@ -29,43 +55,150 @@ public class MetricsService {
     private static final String RESPONSE_TIME_SUM = "response_time_sum";
     private static final String RESPONSE_TIME_COUNT = "response_time_count";
 
+    // Field order of PendingCounters.fields
+    private static final String[] FIELDS = {
+        TOTAL_REQUESTS, ALLOWED_REQUESTS, DENIED_REQUESTS, RESPONSE_TIME_SUM, RESPONSE_TIME_COUNT
+    };
+    private static final int TOTAL = 0;
+    private static final int ALLOWED = 1;
+    private static final int DENIED = 2;
+    private static final int RT_SUM = 3;
+    private static final int RT_COUNT = 4;
+
+    private static final long HOUR_TTL_SECONDS = TimeUnit.HOURS.toSeconds(48);
+    private static final long DAY_TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    // Buckets older than this (and fully flushed) are dropped from memory
+    private static final long STALE_BUCKET_GRACE_MS = 60_000;
+
+    // metrics key (without prefix) -> deltas not yet written to Redis
+    private final ConcurrentHashMap<String, PendingCounters> pending = new ConcurrentHashMap<>();
+
+    // Per-user entries dropped by the last flush, drained once more by the next
+    private List<PendingFlush> retired = new ArrayList<>();
+
+    private volatile BucketKey hourBucket = new BucketKey(Long.MIN_VALUE, null);
+    private volatile BucketKey dayBucket = new BucketKey(Long.MIN_VALUE, null);
+
     public void recordRequest(String userId, boolean allowed, long responseTime) {
 
-        String hourKey = getHourKey();
-        String dayKey = getDayKey();
+        long now = System.currentTimeMillis();
+        String hourKey = currentHourKey(now);
+        String dayKey = currentDayKey(now);
+        String userDayKey = dayKey + ":user:" + userId;
 
-        incrementMetric(hourKey,TOTAL_REQUESTS);
-        incrementMetric(dayKey, TOTAL_REQUESTS);
+        PendingCounters hour = counters(hourKey, HOUR_TTL_SECONDS, hourBucket.end(), false);
+        PendingCounters day = counters(dayKey, DAY_TTL_SECONDS, dayBucket.end(), false);
+        PendingCounters user = counters(userDayKey, DAY_TTL_SECONDS, dayBucket.end(), true);
 
+        int outcome = allowed ? ALLOWED : DENIED;
 
-        if(allowed){
-            incrementMetric(hourKey, ALLOWED_REQUESTS);
-            incrementMetric(dayKey, ALLOWED_REQUESTS);
-        }else{
-            incrementMetric(hourKey, DENIED_REQUESTS);
-            incrementMetric(dayKey, DENIED_REQUESTS);
+        hour.add(TOTAL, 1);
+        hour.add(outcome, 1);
+        hour.add(RT_SUM, responseTime);
+        hour.add(RT_COUNT, 1);
+
+        day.add(TOTAL, 1);
+        day.add(outcome, 1);
+        day.add(RT_SUM, responseTime);
+        day.add(RT_COUNT, 1);
+
+        user.add(TOTAL, 1);
+        user.add(outcome, 1);
+    }
+
+    /**
+     * Write all pending deltas to Redis in a single pipeline.
+     */
+    @Scheduled(fixedDelayString = "${metrics.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        long now = System.currentTimeMillis();
+        List<PendingFlush> batch = new ArrayList<>();
+
+        // Late increments to entries dropped last time; their TTL is already set
+        for (PendingFlush dropped : retired) {
+            long[] deltas = dropped.counters.drain();
+            if (!isEmpty(deltas)) {
+                batch.add(new PendingFlush(dropped.entryKey, dropped.key, dropped.counters, deltas, false));
+            }
         }
+        retired = new ArrayList<>();
 
-        incrementMetricBy(hourKey, RESPONSE_TIME_SUM, responseTime);
-        incrementMetric(hourKey, RESPONSE_TIME_COUNT);
-        incrementMetricBy(dayKey, RESPONSE_TIME_SUM, responseTime);
-        incrementMetric(dayKey, RESPONSE_TIME_COUNT);
+        for (Map.Entry<String, PendingCounters> entry : pending.entrySet()) {
+            PendingCounters counters = entry.getValue();
+            long[] deltas = counters.drain();
 
+            if (isEmpty(deltas) && counters.ttlApplied) {
+                if (now > counters.bucketEnd + STALE_BUCKET_GRACE_MS) {
+                    pending.remove(entry.getKey(), counters);
+                }
+                continue;
+            }
+            batch.add(new PendingFlush(entry.getKey(), METRICS_PREFIX + entry.getKey(), counters, deltas, !counters.ttlApplied));
+        }
 
-        String userDayKey = getDayKey() + ":user:" + userId;
-        incrementMetric(userDayKey, TOTAL_REQUESTS);
-        if(allowed){
-            incrementMetric(userDayKey, ALLOWED_REQUESTS);
-        }else{
-            incrementMetric(userDayKey, DENIED_REQUESTS);
+        if (batch.isEmpty()) {
+            return;
         }
 
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (PendingFlush flush : batch) {
+                    for (int i = 0; i < FIELDS.length; i++) {
+                        if (flush.deltas[i] != 0) {
+                            conn.hIncrBy(flush.key, FIELDS[i], flush.deltas[i]);
+                        }
+                    }
+                    if (flush.applyTtl) {
+                        conn.expire(flush.key, flush.counters.ttlSeconds);
+                    }
+                }
+                return null;
+            });
+
+            for (PendingFlush flush : batch) {
+                if (flush.applyTtl) {
+                    flush.counters.ttlApplied = true;
+                }
+                // Written and expiring: a per-user entry can go, the next request re-creates it
+                if (flush.counters.perUser && flush.counters.ttlApplied
+                        && pending.remove(flush.entryKey, flush.counters)) {
+                    retired.add(flush);
+                }
+            }
+        } catch (Exception e) {
+            // Put the deltas back so the next flush retries them
+            for (PendingFlush flush : batch) {
+                flush.counters.restore(flush.deltas);
+                if (pending.get(flush.entryKey) != flush.counters) {
+                    // Dropped earlier; keep draining it until the deltas are written
+                    retired.add(flush);
+                }
+            }
+            logger.warn("Metrics flush failed, {} keys will be retried: {}", batch.size(), e.getMessage());
+        }
+    }
 
-        redis.expire(METRICS_PREFIX + hourKey, 48, TimeUnit.HOURS);
-        redis.expire(METRICS_PREFIX + dayKey, 7,TimeUnit.DAYS);
-        redis.expire(METRICS_PREFIX + userDayKey, 7, TimeUnit.DAYS);
+    @PreDestroy
+    public void shutdown() {
+        flush();
     }
 
+    private PendingCounters counters(String key, long ttlSeconds, long bucketEnd, boolean perUser) {
+        PendingCounters counters = pending.get(key);
+        if (counters == null) {
+            counters = pending.computeIfAbsent(key, k -> new PendingCounters(ttlSeconds, bucketEnd, perUser));
+        }
+        return counters;
+    }
+
+    private static boolean isEmpty(long[] deltas) {
+        for (long delta : deltas) {
+            if (delta != 0) return false;
+        }
+        return true;
+    }
 
     public Map<String,Object> getMetricsSummary(){
         Map<String, Object> summary = new HashMap<>();
@@ -144,18 +277,6 @@ public class MetricsService {
 
         return historical;
     }
-    private void incrementMetric(String timeKey, String metric) {
-        String key = METRICS_PREFIX + timeKey;
-        redis.opsForHash().increment(key, metric, 1);
-    }
-
-    private void incrementMetricBy(String timeKey, String metric, long value) {
-        String key = METRICS_PREFIX + timeKey;
-        redis.opsForHash().increment(key, metric, value);
-    }
-
-
-
     private Map<String, Object> getMetricsForKey(String timeKey) {
         String key = METRICS_PREFIX + timeKey;
 
@@ -208,7 +329,7 @@ public class MetricsService {
     }
 
     private String getHourKey() {
-        return formatHourKey(Instant.now());
+        return currentHourKey(System.currentTimeMillis());
     }
     private String formatHourKey(Instant time) {
         return "hourly:" + time.truncatedTo(ChronoUnit.HOURS)
@@ -217,9 +338,84 @@ public class MetricsService {
                 .replace("T", "_");
     }
     private String getDayKey() {
-        return "daily:" + Instant.now()
+        return currentDayKey(System.currentTimeMillis());
+    }
+    private String formatDayKey(Instant time) {
+        return "daily:" + time
                 .truncatedTo(ChronoUnit.DAYS)
                 .toString()
                 .split("T")[0];
     }
+
+    // Bucket keys are only re-formatted when the hour/day rolls over
+
+    private String currentHourKey(long now) {
+        BucketKey bucket = hourBucket;
+        if (now >= bucket.end()) {
+            long start = now - Math.floorMod(now, TimeUnit.HOURS.toMillis(1));
+            bucket = new BucketKey(start + TimeUnit.HOURS.toMillis(1), formatHourKey(Instant.ofEpochMilli(start)));
+            hourBucket = bucket;
+        }
+        return bucket.key();
+    }
+
+    private String currentDayKey(long now) {
+        BucketKey bucket = dayBucket;
+        if (now >= bucket.end()) {
+            long start = now - Math.floorMod(now, TimeUnit.DAYS.toMillis(1));
+            bucket = new BucketKey(start + TimeUnit.DAYS.toMillis(1), formatDayKey(Instant.ofEpochMilli(start)));
+            dayBucket = bucket;
+        }
+        return bucket.key();
+    }
+
+    private record BucketKey(long end, String key) {}
+
+    /**
+     * Striped counters for one Redis hash. LongAdder keeps the hot global
+     * hour/day keys cheap to bump from many threads.
+     */
+    private static final class PendingCounters {
+        final long ttlSeconds;
+        final long bucketEnd;
+        final boolean perUser;
+        final LongAdder[] fields = new LongAdder[FIELDS.length];
+        volatile boolean ttlApplied;
+
+        PendingCounters(long ttlSeconds, long bucketEnd, boolean perUser) {
+            this.ttlSeconds = ttlSeconds;
+            this.bucketEnd = bucketEnd;
+            this.perUser = perUser;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new LongAdder();
+            }
+        }
+
+        void add(int field, long value) {
+            fields[field].add(value);
+        }
+
+        // Subtract exactly what was read, so concurrent increments are never lost
+        long[] drain() {
+            long[] deltas = new long[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                long value = fields[i].sum();
+                if (value != 0) {
+                    fields[i].add(-value);
+                }
+                deltas[i] = value;
+            }
+            return deltas;
+        }
+
+        void restore(long[] deltas) {
+            for (int i = 0; i < fields.length; i++) {
+                if (deltas[i] != 0) {
+                    fields[i].add(deltas[i]);
+                }
+            }
+        }
+    }
+
+    private record PendingFlush(String entryKey, String key, PendingCounters counters, long[] deltas, boolean applyTtl) {}
 }
@@ -0,0 +1,193 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+
+/**
+ * Coalesces concurrent requests into batches for a single backend call.
+ *
+ * A collector thread takes the first waiting request, then keeps adding
+ * requests until the batch is full or the first one has waited maxWait.
+ * The batch is handed to a small dispatch pool so several batches can be
+ * in flight while the next one is being collected. Under light load a
+ * request waits at most maxWait; under heavy load batches fill up and
+ * leave immediately.
+ *
+ * If the batch call throws, every request in it fails with that exception.
+ * A batch that cannot be dispatched (the pool's bounded queue is full, or
+ * the batcher is shutting down) fails its requests the same way, and a
+ * caller never waits longer than its timeout for a result.
+ */
+class MicroBatcher<Q, R> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutMs;
+    private final Function<List<Q>, List<R>> batchCall;
+
+    private final BlockingQueue<Pending<Q, R>> queue = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor dispatcher;
+    private final Thread collector;
+    private volatile boolean running = true;
+
+    private final DistributionSummary batchSizes;
+    private final Timer batchWait;
+
+    MicroBatcher(String name, int maxBatchSize, long maxWaitMicros, int concurrency,
+                 int maxPendingBatches, long timeoutMs,
+                 Function<List<Q>, List<R>> batchCall, MeterRegistry registry) {
+        this.name = name;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxWaitMicros));
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.batchCall = batchCall;
+
+        this.batchSizes = DistributionSummary.builder("ratelimit.batch.size")
+                .description("Requests per batched Redis call")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchWait = Timer.builder("ratelimit.batch.wait")
+                .description("Time a request waited before its batch was sent")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(registry);
+
+        // Bounded: when Redis falls behind, new batches fail fast instead of queueing
+        int threads = Math.max(1, concurrency);
+        this.dispatcher = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxPendingBatches)), runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + name + "-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.collector = new Thread(this::collect, "batch-" + name + "-collector");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    /**
+     * Submit one request and wait for its result.
+     */
+    R submit(Q request) {
+        if (!running) {
+            throw new IllegalStateException("Batcher " + name + " is shut down");
+        }
+        Pending<Q, R> pending = new Pending<>(request, System.nanoTime());
+        queue.add(pending);
+        try {
+            return pending.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            // Rethrow the backend's own exception so the circuit breaker sees it
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                throw new IllegalStateException("Batcher " + name + " gave no result within " + timeoutMs + " ms");
+            }
+            throw e;
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        collector.interrupt();
+        dispatcher.shutdown();
+        List<Pending<Q, R>> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        leftover.forEach(p -> p.future.completeExceptionally(
+                new IllegalStateException("Batcher " + name + " is shut down")));
+    }
+
+    private void collect() {
+        while (running) {
+            List<Pending<Q, R>> batch = new ArrayList<>(maxBatchSize);
+            try {
+                Pending<Q, R> first = queue.take();
+                batch.add(first);
+
+                long deadline = first.enqueuedAt + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already queued without waiting
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending<Q, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                dispatcher.execute(() -> dispatch(batch));
+            } catch (InterruptedException e) {
+                fail(batch, new IllegalStateException("Batcher " + name + " is shut down"));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // e.g. RejectedExecutionException: the dispatch queue is full or shut down
+                fail(batch, e instanceof RuntimeException runtime ? runtime : new IllegalStateException(e));
+                logger.warn("Batcher {} could not dispatch {} requests: {}", name, batch.size(), e.toString());
+            }
+        }
+    }
+
+    private void fail(List<Pending<Q, R>> batch, RuntimeException e) {
+        batch.forEach(p -> p.future.completeExceptionally(e));
+    }
+
+    private void dispatch(List<Pending<Q, R>> batch) {
+        long sentAt = System.nanoTime();
+        batchSizes.record(batch.size());
+
+        List<Q> requests = new ArrayList<>(batch.size());
+        for (Pending<Q, R> pending : batch) {
+            batchWait.record(sentAt - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+            requests.add(pending.request);
+        }
+
+        try {
+            List<R> results = batchCall.apply(requests);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        } catch (Exception e) {
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    private static final class Pending<Q, R> {
+        final Q request;
+        final long enqueuedAt;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Pending(Q request, long enqueuedAt) {
+            this.request = request;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.ratelimitx.core.service;
 
+import com.ratelimitx.core.config.RedisShards;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 
@@ -25,33 +32,55 @@ import org.springframework.stereotype.Service;
  * 
  * Wraps Micrometer/Prometheus metrics and provides methods
  * to record application events and state changes.
+ * 
+ * Meters are registered once per tag combination and cached, so the hot
+ * path is a map lookup plus an increment. Only the current top-N users
+ * (heavy hitters) get their own user_id series; everyone else is folded
+ * into user_id="__other__", and the number of per-user series is hard capped.
  */
 @Service
 public class PrometheusMetricsService {
     
+    // Overflow tag; the underscores keep it apart from a real user named "other"
+    static final String OTHER_USERS = "__other__";
+    private static final String UNKNOWN = "unknown";
+    
+    private static final int ALLOWED = 1;
+    private static final int DENIED = 0;
+    
     private final MeterRegistry meterRegistry;
-    private final Counter ratelimitRequestsCounter;
-    private final Counter ratelimitDeniedCounter;
-    private final Timer ratelimitCheckTimer;
+    private final int topUserCount;
+    private final int maxUserSeries;
+    private final HeavyHitterTracker heavyHitters;
+    
+    private volatile Set<String> topUsers = Set.of();
+    private final AtomicInteger userSeries = new AtomicInteger();
+    
+    // algorithm -> user label -> [denied, allowed]
+    private final Map<String, Map<String, Counter[]>> requestCounters = new ConcurrentHashMap<>();
+    // user label -> counter
+    private final Map<String, Counter> deniedCounters = new ConcurrentHashMap<>();
+    // algorithm -> [denied, allowed]
+    private final Map<String, Timer[]> checkTimers = new ConcurrentHashMap<>();
+    private final Timer untaggedCheckTimer;
+    
     private final AtomicReference<Integer> activeUsers;
     private final AtomicReference<String> circuitBreakerState;
     
-    public PrometheusMetricsService(MeterRegistry meterRegistry) {
+    public PrometheusMetricsService(
+            MeterRegistry meterRegistry,
+            RedisShards redisShards,
+            @Value("${metrics.prometheus.top-users:20}") int topUserCount,
+            @Value("${metrics.prometheus.max-user-series:200}") int maxUserSeries
+    ) {
         this.meterRegistry = meterRegistry;
+        this.topUserCount = topUserCount;
+        this.maxUserSeries = maxUserSeries;
+        // Track more candidates than we expose so ranks near the cut-off are stable
+        this.heavyHitters = new HeavyHitterTracker(Math.max(topUserCount * 4, 16));
         
-        // Initialize counters
-        this.ratelimitRequestsCounter = Counter.builder("ratelimit.requests.total")
-                .description("Total rate limit requests")
-                .register(meterRegistry);
-        
-        this.ratelimitDeniedCounter = Counter.builder("ratelimit.requests.denied")
-                .description("Total denied requests")
-                .register(meterRegistry);
-        
-        // Initialize timer
-        this.ratelimitCheckTimer = Timer.builder("ratelimit.check.duration")
-                .description("Rate limit check duration")
-                .register(meterRegistry);
+        // Same tag keys as the tagged timers (Prometheus needs one tag set per name)
+        this.untaggedCheckTimer = checkTimer(UNKNOWN, UNKNOWN);
         
         // Initialize atomic references for gauges
         this.activeUsers = new AtomicReference<>(0);
@@ -64,6 +93,11 @@ public class PrometheusMetricsService {
         io.micrometer.core.instrument.Gauge.builder("app.circuitbreaker.state",
                 () -> stateToNumber(circuitBreakerState.get()))
                 .register(meterRegistry);
+        
+        // Worst state over the shards (just the one breaker when not sharded)
+        for (RedisShards.Shard shard : redisShards.shards()) {
+            shard.breaker().addStateListener(state -> setCircuitBreakerState(redisShards.worstState().name()));
+        }
     }
     
     /**
@@ -75,18 +109,22 @@ public class PrometheusMetricsService {
      */
     public void recordRequest(String userId, boolean allowed, String algorithm) {
         try {
-            Tags tags = Tags.of(
-                    "user_id", userId != null ? userId : "unknown",
-                    "allowed", String.valueOf(allowed),
-                    "algorithm", algorithm != null ? algorithm : "unknown"
-            );
-            Counter.builder("ratelimit.requests.total")
-                    .tags(tags)
-                    .register(meterRegistry)
-                    .increment();
+            if (userId != null) {
+                heavyHitters.offer(userId);
+            }
+            String algorithmTag = algorithm != null ? algorithm : UNKNOWN;
             
-            // Also increment the general counter
-            ratelimitRequestsCounter.increment();
+            Map<String, Counter[]> byUser = requestCounters.get(algorithmTag);
+            if (byUser == null) {
+                byUser = requestCounters.computeIfAbsent(algorithmTag, a -> new ConcurrentHashMap<>());
+            }
+            
+            String userTag = userTag(userId);
+            Counter[] counters = byUser.get(userTag);
+            if (counters == null) {
+                counters = registerRequestCounters(byUser, algorithmTag, userTag);
+            }
+            counters[allowed ? ALLOWED : DENIED].increment();
         } catch (Exception e) {
             // Silently ignore errors for non-critical metrics
         }
@@ -99,14 +137,12 @@ public class PrometheusMetricsService {
      */
     public void recordDenied(String userId) {
         try {
-            Tags tags = Tags.of("user_id", userId != null ? userId : "unknown");
-            Counter.builder("ratelimit.requests.denied")
-                    .tags(tags)
-                    .register(meterRegistry)
-                    .increment();
-            
-            // Also increment the general counter
-            ratelimitDeniedCounter.increment();
+            String userTag = userTag(userId);
+            Counter counter = deniedCounters.get(userTag);
+            if (counter == null) {
+                counter = registerDeniedCounter(userTag);
+            }
+            counter.increment();
         } catch (Exception e) {
             // Silently ignore errors for non-critical metrics
         }
@@ -119,7 +155,7 @@ public class PrometheusMetricsService {
      */
     public void recordCheckDuration(long durationMs) {
         try {
-            ratelimitCheckTimer.record(durationMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            untaggedCheckTimer.record(durationMs, java.util.concurrent.TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             // Silently ignore errors for non-critical metrics
         }
@@ -134,19 +170,134 @@ public class PrometheusMetricsService {
      */
     public void recordCheckDuration(long durationMs, String algorithm, boolean allowed) {
         try {
-            Tags tags = Tags.of(
-                    "algorithm", algorithm != null ? algorithm : "unknown",
-                    "result", allowed ? "allowed" : "denied"
-            );
-            Timer.builder("ratelimit.check.duration")
-                    .tags(tags)
-                    .register(meterRegistry)
-                    .record(durationMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            String algorithmTag = algorithm != null ? algorithm : UNKNOWN;
+            Timer[] timers = checkTimers.get(algorithmTag);
+            if (timers == null) {
+                timers = checkTimers.computeIfAbsent(algorithmTag, a -> new Timer[] {
+                        checkTimer(a, "denied"),
+                        checkTimer(a, "allowed")
+                });
+            }
+            timers[allowed ? ALLOWED : DENIED].record(durationMs, java.util.concurrent.TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             // Silently ignore errors for non-critical metrics
         }
     }
     
+    /**
+     * Re-rank heavy hitters. Users that dropped out of the top-N lose
+     * their series (their traffic goes to "__other__" from now on).
+     */
+    @Scheduled(fixedDelayString = "${metrics.prometheus.top-users-refresh-ms:30000}")
+    public void refreshTopUsers() {
+        Set<String> next = heavyHitters.topAndDecay(topUserCount);
+        // A user literally named like the overflow tag stays folded into it
+        next.remove(OTHER_USERS);
+        
+        Set<String> dropped = new HashSet<>(topUsers);
+        dropped.removeAll(next);
+        topUsers = next;
+        
+        for (String user : dropped) {
+            for (Map<String, Counter[]> byUser : requestCounters.values()) {
+                Counter[] counters = byUser.remove(user);
+                if (counters != null) {
+                    meterRegistry.remove(counters[DENIED]);
+                    meterRegistry.remove(counters[ALLOWED]);
+                    userSeries.addAndGet(-2);
+                }
+            }
+            Counter denied = deniedCounters.remove(user);
+            if (denied != null) {
+                meterRegistry.remove(denied);
+                userSeries.decrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Number of per-user series currently registered (excluding "__other__")
+     */
+    public int getUserSeriesCount() {
+        return userSeries.get();
+    }
+    
+    public Set<String> getTopUsers() {
+        return topUsers;
+    }
+    
+    private String userTag(String userId) {
+        return userId != null && topUsers.contains(userId) ? userId : OTHER_USERS;
+    }
+    
+    private Counter[] registerRequestCounters(Map<String, Counter[]> byUser, String algorithm, String userTag) {
+        if (!OTHER_USERS.equals(userTag) && !reserveUserSeries(2)) {
+            userTag = OTHER_USERS;
+        }
+        String tag = userTag;
+        boolean[] created = {false};
+        Counter[] counters = byUser.computeIfAbsent(tag, u -> {
+            created[0] = true;
+            return new Counter[] {
+                    requestCounter(u, false, algorithm),
+                    requestCounter(u, true, algorithm)
+            };
+        });
+        if (!created[0] && !OTHER_USERS.equals(tag)) {
+            userSeries.addAndGet(-2);
+        }
+        return counters;
+    }
+    
+    private Counter registerDeniedCounter(String userTag) {
+        if (!OTHER_USERS.equals(userTag) && !reserveUserSeries(1)) {
+            userTag = OTHER_USERS;
+        }
+        String tag = userTag;
+        boolean[] created = {false};
+        Counter counter = deniedCounters.computeIfAbsent(tag, u -> {
+            created[0] = true;
+            return Counter.builder("ratelimit.requests.denied")
+                    .description("Total denied requests")
+                    .tag("user_id", u)
+                    .register(meterRegistry);
+        });
+        if (!created[0] && !OTHER_USERS.equals(tag)) {
+            userSeries.decrementAndGet();
+        }
+        return counter;
+    }
+    
+    private boolean reserveUserSeries(int count) {
+        while (true) {
+            int current = userSeries.get();
+            if (current + count > maxUserSeries) {
+                return false;
+            }
+            if (userSeries.compareAndSet(current, current + count)) {
+                return true;
+            }
+        }
+    }
+    
+    private Counter requestCounter(String userTag, boolean allowed, String algorithm) {
+        return Counter.builder("ratelimit.requests.total")
+                .description("Total rate limit requests")
+                .tag("user_id", userTag)
+                .tag("allowed", String.valueOf(allowed))
+                .tag("algorithm", algorithm)
+                .register(meterRegistry);
+    }
+    
+    private Timer checkTimer(String algorithm, String result) {
+        return Timer.builder("ratelimit.check.duration")
+                .description("Rate limit check duration")
+                .tag("algorithm", algorithm)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+    
     /**
      * Set the circuit breaker state
      * 
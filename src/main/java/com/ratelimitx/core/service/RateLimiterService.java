@@ -1,93 +1,177 @@
 package com.ratelimitx.core.service;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
 import com.ratelimitx.core.model.RateLimitResult;
 
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
 
 
 
+
+/**
+ * Fixed window per minute ("rate:{user}:{minute}").
+ *
+ * Every check is one script call that increments and sets the TTL
+ * together, so a key can never be left without an expiry. The limit is
+ * passed in (per-user limits come from LimitResolver, not from Redis on
+ * every call). Reset times are in milliseconds, like the other algorithms.
+ */
 @Service
 public class RateLimiterService {
 
+    private static final long WINDOW_MS = 60000;
+
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private RedisShards redisShards;
 
-    public boolean checkRateLimit(String userId, int maxRequest){
-        long currentMinute = System.currentTimeMillis()/60000;
-        String key="rate:"+userId+":"+currentMinute;
+    @Autowired
+    private RedisKeys redisKeys;
 
-        Long count = redisTemplate.opsForValue().increment(key);
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
 
-        if(count==null) return true;
-        if(count == 1)
-            redisTemplate.expire(key,60,TimeUnit.SECONDS);
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> fixedWindowScript;
 
-        return count <= maxRequest;
+    @PostConstruct
+    public void init() {
+        fixedWindowScript = new DefaultRedisScript<>();
+        fixedWindowScript.setScriptText(getLuaScript());
+        fixedWindowScript.setResultType(List.class);
     }
 
-    public boolean checkCustomRateLimit(String userId){
-        String customLimit = (String) redisTemplate.opsForHash().get("user-limits",userId);
-        int maxRequest = customLimit !=null ? Integer.parseInt(customLimit) : 10;
-
-        return checkRateLimit(userId, maxRequest);
+    public boolean checkRateLimit(String userId, int maxRequest){
+        return execute(userId, maxRequest).isAllowed();
     }
 
+    /**
+     * Check with the default limit
+     */
     public RateLimitResult checkWithInfo(String userId) {
-        String customLimit = (String) redisTemplate.opsForHash().get("user-limits", userId);
-        int maxRequest = customLimit != null ? Integer.parseInt(customLimit) : 10;
-
-        long currentMinute = System.currentTimeMillis() / 60000;
-        String key = "rate:" + userId + ":" + currentMinute;
-
-        Long count = redisTemplate.opsForValue().increment(key);
+        return execute(userId, config.getMaxRequests());
+    }
 
-        if (count == null) {
-            return new RateLimitResult(true, maxRequest, maxRequest, 0);
-        }
+    /**
+     * Check rate limit with custom limit (based on user tier)
+     */
+    public RateLimitResult checkWithInfo(String userId, int maxRequest) {
+        return execute(userId, maxRequest);
+    }
 
-        if (count == 1) {
-            redisTemplate.expire(key, 60, TimeUnit.SECONDS);
-        }
+    /**
+     * Non-blocking variant of checkWithInfo(userId, maxRequest).
+     */
+    public Mono<RateLimitResult> checkWithInfoReactive(String userId, int maxRequest) {
+        long now = System.currentTimeMillis();
+        return ReactiveScripts.eval(redisShards.reactiveTemplate(userId), fixedWindowScript,
+                        keys(userId, now), args(maxRequest))
+                .map(result -> toResult(result, maxRequest, now));
+    }
 
-        boolean allowed = count <= maxRequest;
-        int remaining = Math.max(0, maxRequest - count.intValue());
+    private RateLimitResult execute(String userId, int maxRequest) {
+        long now = System.currentTimeMillis();
 
-        // Seconds until window resets
-        int secondsIntoMinute = (int)((System.currentTimeMillis() / 1000) % 60);
-        long resetTime = 60 - secondsIntoMinute;
+        @SuppressWarnings("unchecked")
+        List<Long> result = redisShards.template(userId).execute(
+            fixedWindowScript,
+            keys(userId, now),
+            args(maxRequest)
+        );
 
-        return new RateLimitResult(allowed, maxRequest, remaining, resetTime);
+        return toResult(result, maxRequest, now);
     }
 
     /**
-     * Check rate limit with custom limit (based on user tier)
+     * Add fallback admissions to the current window (see FallbackReconciler),
+     * one pipeline per shard. Admissions from an earlier window no longer count and
+     * are skipped. Returns the number of keys updated.
      */
-    public RateLimitResult checkWithInfo(String userId, int maxRequest) {
-        long currentMinute = System.currentTimeMillis() / 60000;
-        String key = "rate:" + userId + ":" + currentMinute;
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        long now = System.currentTimeMillis();
+        long windowStart = now - (now % WINDOW_MS);
+        List<FallbackLedger.Delta> current = deltas.stream()
+                .filter(delta -> delta.lastAt() >= windowStart)
+                .toList();
+        if (current.isEmpty()) {
+            return 0;
+        }
+
+        redisShards.groupByShard(current, FallbackLedger.Delta::key).forEach((shard, onShard) ->
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (FallbackLedger.Delta delta : onShard) {
+                        conn.eval(RECONCILE_COUNTER_SCRIPT, ReturnType.INTEGER, 1,
+                                keys(delta.key(), now).get(0), String.valueOf(delta.count()), String.valueOf(WINDOW_MS));
+                    }
+                    return null;
+                }));
+        return current.size();
+    }
 
-        Long count = redisTemplate.opsForValue().increment(key);
+    private List<String> keys(String userId, long now) {
+        return Arrays.asList(redisKeys.fixedWindow(userId, now / WINDOW_MS));
+    }
+
+    private Object[] args(int maxRequest) {
+        return new Object[] {
+            String.valueOf(maxRequest),
+            String.valueOf(WINDOW_MS)
+        };
+    }
 
-        if (count == null) {
+    private RateLimitResult toResult(List<Long> result, int maxRequest, long now) {
+        if (result == null || result.isEmpty()) {
             return new RateLimitResult(true, maxRequest, maxRequest, 0);
         }
 
-        if (count == 1) {
-            redisTemplate.expire(key, 60, TimeUnit.SECONDS);
-        }
+        long count = result.get(0);
+        int limit = result.get(1).intValue();
 
-        boolean allowed = count <= maxRequest;
-        int remaining = Math.max(0, maxRequest - count.intValue());
+        boolean allowed = count <= limit;
+        int remaining = (int) Math.max(0, limit - count);
 
-        // Seconds until window resets
-        int secondsIntoMinute = (int)((System.currentTimeMillis() / 1000) % 60);
-        long resetTime = 60 - secondsIntoMinute;
+        // Milliseconds until the window resets
+        long resetTime = WINDOW_MS - (now % WINDOW_MS);
 
-        return new RateLimitResult(allowed, maxRequest, remaining, resetTime);
+        return new RateLimitResult(allowed, limit, remaining, resetTime);
     }
+
+    private String getLuaScript() {
+        return """
+            local key = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local window_ms = tonumber(ARGV[2])
+
+            local count = redis.call('INCR', key)
+            if count == 1 then
+                redis.call('PEXPIRE', key, window_ms)
+            end
+
+            return {count, limit}
+            """;
+    }
+
+    // Fallback admissions into a window counter (also used by TokenLeaseService)
+    static final String RECONCILE_COUNTER_SCRIPT = """
+            local count = redis.call('INCRBY', KEYS[1], ARGV[1])
+            if redis.call('PTTL', KEYS[1]) < 0 then
+                redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return count
+            """;
 }
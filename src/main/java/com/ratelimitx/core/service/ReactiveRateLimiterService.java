@@ -0,0 +1,68 @@
+package com.ratelimitx.core.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.algorithm.RateLimitAlgorithm;
+import com.ratelimitx.core.circuitbreaker.LatencyBudget;
+import com.ratelimitx.core.circuitbreaker.ReactiveCircuitBreaker;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.LimitRule;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Non-blocking counterpart of ResilientRateLimiter.
+ *
+ * Uses the same active algorithm and the same circuit breakers; the
+ * Redis call goes through the reactive template, so no thread waits for
+ * the reply. The local fallback is in-memory and runs inline.
+ */
+@Service
+public class ReactiveRateLimiterService {
+
+    @Autowired
+    private ResilientRateLimiter resilientRateLimiter;
+
+    @Autowired
+    private HierarchicalRateLimitService hierarchicalRateLimitService;
+
+    @Autowired
+    private ReactiveCircuitBreaker reactiveCircuitBreaker;
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private LatencyBudget latencyBudget;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    /**
+     * Check rate limit with custom limit (based on user tier)
+     */
+    public Mono<RateLimitResult> checkRateLimit(String userId, int customLimit) {
+        RateLimitAlgorithm active = resilientRateLimiter.getAlgorithm();
+        clusterMembership.recordRequests(1);
+        return reactiveCircuitBreaker.execute(redisShards.shardFor(userId).breaker(),
+                () -> latencyBudget.apply(active.tryAcquireReactive(userId, customLimit)),
+                cause -> resilientRateLimiter.localFallback(active, userId, customLimit, cause)
+        );
+    }
+
+    /**
+     * Check all rules of a request at once; see ResilientRateLimiter.
+     */
+    public Mono<RateLimitResult> checkRateLimit(String userId, List<LimitRule> rules) {
+        clusterMembership.recordRequests(1);
+        return reactiveCircuitBreaker.execute(redisShards.shardFor(RedisShards.HIERARCHY_ROUTE).breaker(),
+                () -> latencyBudget.apply(hierarchicalRateLimitService.checkReactive(rules)),
+                cause -> resilientRateLimiter.localFallback(rules, cause)
+        );
+    }
+}
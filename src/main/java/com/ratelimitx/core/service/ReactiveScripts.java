@@ -0,0 +1,34 @@
+package com.ratelimitx.core.service;
+
+import java.util.List;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Runs the limiter scripts on the reactive template. The scripts all return
+ * a flat array of integers, which is collected back into one list so the
+ * blocking and reactive paths can share their result mapping.
+ */
+final class ReactiveScripts {
+
+    private ReactiveScripts() {
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static Mono<List<Long>> eval(ReactiveStringRedisTemplate template, RedisScript<List> script,
+                                 List<String> keys, Object... args) {
+        return template.execute(script, keys, List.of(args))
+                .collectList()
+                .map(emitted -> {
+                    // A multi-bulk reply may arrive element by element or as one list
+                    if (emitted.size() == 1 && emitted.get(0) instanceof List nested) {
+                        return (List<Long>) nested;
+                    }
+                    return (List<Long>) (List) emitted;
+                });
+    }
+}
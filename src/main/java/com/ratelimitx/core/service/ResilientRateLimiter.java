@@ -1,15 +1,28 @@
 package com.ratelimitx.core.service;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.stereotype.Service;
 
-import com.ratelimitx.core.circuitbreaker.CircuitBreaker;
+import com.ratelimitx.core.algorithm.RateLimitAlgorithm;
+import com.ratelimitx.core.algorithm.RateLimitAlgorithmRegistry;
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.circuitbreaker.LatencyBudget;
 import com.ratelimitx.core.circuitbreaker.LocalRateLimiter;
 import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.LimitRule;
 import com.ratelimitx.core.model.RateLimitResult;
 
+import jakarta.annotation.PostConstruct;
+
 
 
 
@@ -19,30 +32,56 @@ public class ResilientRateLimiter {
     private static final Logger logger = LoggerFactory.getLogger(ResilientRateLimiter.class);
 
     @Autowired
-    private CircuitBreaker circuitBreaker;
+    private RedisShards redisShards;
 
     @Autowired
-    private LocalRateLimiter localRateLimiter;
+    private LatencyBudget latencyBudget;
 
     @Autowired
-    private RateLimiterService fixedWindowService;
+    private RateLimitAlgorithmRegistry algorithmRegistry;
 
     @Autowired
-    private TokenBucketService tokenBucketService;
+    private HierarchicalRateLimitService hierarchicalRateLimitService;
 
     @Autowired
-    private SlidingWindowService slidingWindowService;
+    private GcraService gcraService;
+
+    @Autowired
+    private LocalRateLimiter localRateLimiter;
+
+    @Autowired
+    private FallbackLedger fallbackLedger;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
 
     @Autowired
     @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
     private RateLimitConfig config;
 
-    public RateLimitResult checkRateLimit(String userId) {
+    // Resolved once from ratelimit.algorithm, not per request
+    private volatile RateLimitAlgorithm algorithm;
 
-        return circuitBreaker.execute(
-            () -> executeRedisRateLimit(userId),
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Re-resolve the active algorithm after ratelimit.algorithm changed.
+     */
+    public void reload() {
+        algorithm = algorithmRegistry.resolve(config.getAlgorithm());
+        logger.info("Active rate limit algorithm: {}", algorithm.name());
+    }
 
-            () -> executeLocalFallback(userId)
+    public RateLimitResult checkRateLimit(String userId) {
+        RateLimitAlgorithm active = algorithm;
+        clusterMembership.recordRequests(1);
+        return redisShards.shardFor(userId).breaker().execute(
+            () -> latencyBudget.call(() -> active.tryAcquire(userId), () -> active.tryAcquireReactive(userId)),
+
+            cause -> executeLocalFallback(active, userId, cause)
         );
     }
 
@@ -50,55 +89,129 @@ public class ResilientRateLimiter {
      * Check rate limit with custom limit (based on user tier)
      */
     public RateLimitResult checkRateLimit(String userId, int customLimit) {
-        return circuitBreaker.execute(
-                () -> executeRedisRateLimit(userId, customLimit),
-                () -> executeLocalFallback(userId, customLimit)
+        RateLimitAlgorithm active = algorithm;
+        clusterMembership.recordRequests(1);
+        return redisShards.shardFor(userId).breaker().execute(
+                () -> latencyBudget.call(() -> active.tryAcquire(userId, customLimit),
+                        () -> active.tryAcquireReactive(userId, customLimit)),
+                cause -> localFallback(active, userId, customLimit, cause)
+        );
+    }
+
+    /**
+     * Check all rules of a request at once (see HierarchicalRateLimitService).
+     * While Redis is down only the user's own limit is enforced, locally.
+     */
+    public RateLimitResult checkRateLimit(String userId, List<LimitRule> rules) {
+        clusterMembership.recordRequests(1);
+        return redisShards.shardFor(RedisShards.HIERARCHY_ROUTE).breaker().execute(
+                () -> latencyBudget.call(() -> hierarchicalRateLimitService.check(rules),
+                        () -> hierarchicalRateLimitService.checkReactive(rules)),
+                cause -> localFallback(rules, cause)
         );
     }
 
-    private RateLimitResult executeRedisRateLimit(String userId) {
-        return switch (config.getAlgorithm()) {
-            case "token-bucket" -> tokenBucketService.tryConsume(userId);
-            case "sliding-window" -> slidingWindowService.checkRateLimit(userId);
-            default -> fixedWindowService.checkWithInfo(userId);
-        };
+    /**
+     * Independent GCRA checks for many keys in one Redis call (bulk endpoint).
+     * Results are in the order of the checks. Not under the latency budget,
+     * the cost of a bulk call grows with its size. With sharding each shard
+     * is called (or falls back) on its own.
+     */
+    public List<RateLimitResult> checkBatch(List<GcraService.Check> checks) {
+        clusterMembership.recordRequests(checks.size());
+        RateLimitResult[] results = new RateLimitResult[checks.size()];
+        redisShards.groupByShard(IntStream.range(0, checks.size()).boxed().toList(), i -> checks.get(i).key())
+                .forEach((shard, indexes) -> {
+                    List<GcraService.Check> onShard = indexes.stream().map(checks::get).toList();
+                    List<RateLimitResult> decided = shard.breaker().execute(
+                            () -> gcraService.checkBatch(onShard),
+                            cause -> onShard.stream().map(check -> localFallback(check, cause)).toList()
+                    );
+                    for (int i = 0; i < indexes.size(); i++) {
+                        results[indexes.get(i)] = decided.get(i);
+                    }
+                });
+        return Arrays.asList(results);
     }
 
-    private RateLimitResult executeRedisRateLimit(String userId, int customLimit) {
-        // Use customLimit instead of default
-        String currentAlgorithm = config.getAlgorithm();
-        
-        switch (currentAlgorithm) {
-            case "token-bucket":
-                // Token bucket doesn't support custom limits in this version, use default
-                return tokenBucketService.tryConsume(userId);
-            case "sliding-window":
-                // Sliding window supports custom parameters
-                return slidingWindowService.checkRateLimit(userId, customLimit, 60);
-            case "fixed-window":
-            default:
-                // Fixed window with custom limit
-                return fixedWindowService.checkWithInfo(userId, customLimit);
+    private RateLimitResult localFallback(GcraService.Check check, Throwable cause) {
+        // Local state is keyed apart from users' too
+        RateLimitResult result = localRateLimiter.isAllowedGcra(
+                FallbackReconciler.BATCH + ":" + check.key(), check.limit(), check.windowSeconds() * 1000L, check.cost());
+        if (result.isAllowed() && check.cost() > 0 && !mayHaveReachedRedis(cause)) {
+            fallbackLedger.record(FallbackReconciler.BATCH, check.key(), check.limit(), check.windowSeconds(), check.cost());
         }
+        return result;
     }
 
-    private RateLimitResult executeLocalFallback(String userId) {
+    private RateLimitResult executeLocalFallback(RateLimitAlgorithm active, String userId, Throwable cause) {
         logger.debug("Using local fallback for user: {}", userId);
-        return localRateLimiter.checkRateLimit(userId);
+        RateLimitResult result = active.tryAcquireLocal(userId);
+        if (result.isAllowed() && !mayHaveReachedRedis(cause)) {
+            fallbackLedger.record(active.name(), userId, FallbackLedger.DEFAULT_LIMIT, config.getWindowSizeSeconds(), 1);
+        }
+        return result;
     }
 
-    private RateLimitResult executeLocalFallback(String userId, int customLimit) {
-        return localRateLimiter.isAllowed(userId, customLimit);
+    // Local decisions that Redis must learn about later (see FallbackReconciler)
+
+    RateLimitResult localFallback(RateLimitAlgorithm active, String userId, int limit, Throwable cause) {
+        RateLimitResult result = active.tryAcquireLocal(userId, limit);
+        if (result.isAllowed() && !mayHaveReachedRedis(cause)) {
+            fallbackLedger.record(active.name(), userId, limit, config.getWindowSizeSeconds(), 1);
+        }
+        return result;
     }
 
+    /**
+     * While Redis is down only the user's own rule is enforced, locally and
+     * with GCRA over the rule's window like the hierarchy script, but an
+     * admitted request is owed to every rule.
+     */
+    RateLimitResult localFallback(List<LimitRule> rules, Throwable cause) {
+        // Without a user rule, the strictest one stands in for it
+        LimitRule own = rules.stream()
+                .filter(rule -> LimitRule.USER.equals(rule.dimension()))
+                .findFirst()
+                .orElseGet(() -> rules.stream().min(Comparator.comparingInt(LimitRule::limit)).orElseThrow());
+        RateLimitResult result = localRateLimiter.isAllowedGcra(own.key(), own.limit(), own.windowSeconds() * 1000L);
+        if (result.isAllowed() && !mayHaveReachedRedis(cause)) {
+            for (LimitRule rule : rules) {
+                fallbackLedger.record(FallbackReconciler.HIERARCHY, rule.key(), rule.limit(), rule.windowSeconds(), 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the failed call may still have been applied by Redis, in which
+     * case the ledger must not charge it a second time. Only a refused call
+     * (null) or a connection that could not be obtained is known not to have
+     * run; a budget overrun (LatencyBudgetExceededException) or a command
+     * timeout leaves the script running.
+     */
+    private static boolean mayHaveReachedRedis(Throwable cause) {
+        return cause != null && !(cause instanceof DataAccessResourceFailureException);
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * True when no shard is reachable and every check is decided locally.
+     */
     public boolean isUsingFallback() {
-        return !circuitBreaker.isAllowingRequests();
+        return redisShards.shards().stream().noneMatch(shard -> shard.breaker().isAllowingRequests());
     }
 
     public String getCurrentMode() {
         if (isUsingFallback()) {
             return "local-fallback";
         }
-        return config.getAlgorithm();
+        if (redisShards.shards().stream().anyMatch(shard -> !shard.breaker().isAllowingRequests())) {
+            return "partial-fallback";
+        }
+        return algorithm.name();
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,25 @@
 package com.ratelimitx.core.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
 import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
 import com.ratelimitx.core.model.RateLimitResult;
 
 import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
 
 
 
@@ -31,7 +39,10 @@ public class SlidingWindowService {
 
 
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
 
     @Autowired
     @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
@@ -40,31 +51,83 @@ public class SlidingWindowService {
     @SuppressWarnings("rawtypes")
     private DefaultRedisScript<List> slidingWindowScript;
 
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> slidingWindowStatusScript;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> slidingWindowBatchScript;
+
+    // Read the pre-hash three-key layout while it may still exist
+    @Value("${ratelimit.sliding-window.migrate-legacy-keys:true}")
+    private boolean migrateLegacy;
+
     @PostConstruct
     public void init(){
         slidingWindowScript = new DefaultRedisScript<>();
         slidingWindowScript.setScriptText(getLuaScript());
         slidingWindowScript.setResultType(List.class);
+
+        slidingWindowStatusScript = new DefaultRedisScript<>();
+        slidingWindowStatusScript.setScriptText(getStatusLuaScript());
+        slidingWindowStatusScript.setResultType(List.class);
+
+        slidingWindowBatchScript = new DefaultRedisScript<>();
+        slidingWindowBatchScript.setScriptText(getBatchLuaScript());
+        slidingWindowBatchScript.setResultType(List.class);
     }
 
     public RateLimitResult checkRateLimit(String userId){
         return checkRateLimit(userId, config.getMaxRequests(), config.getWindowSizeSeconds());
     }
     public RateLimitResult checkRateLimit(String userId, int maxRequests, int windowSeconds){
+        return execute(slidingWindowScript, userId, maxRequests, windowSeconds);
+    }
 
-        String keyPrefix = "sliding:"+userId;
+    public RateLimitResult getStatus(String userId){
+        return getStatus(userId, config.getMaxRequests(), config.getWindowSizeSeconds());
+    }
+    /**
+     * Read-only view of the window, one round trip, nothing written.
+     */
+    public RateLimitResult getStatus(String userId, int maxRequests, int windowSeconds){
+        return execute(slidingWindowStatusScript, userId, maxRequests, windowSeconds);
+    }
+
+    /**
+     * Non-blocking variant of checkRateLimit, same script and result.
+     */
+    public Mono<RateLimitResult> checkRateLimitReactive(String userId, int maxRequests, int windowSeconds){
+        return ReactiveScripts.eval(redisShards.reactiveTemplate(userId), slidingWindowScript,
+                        Arrays.asList(redisKeys.sliding(userId)),
+                        args(maxRequests, windowSeconds, System.currentTimeMillis()))
+                .map(result -> toResult(result, maxRequests, windowSeconds));
+    }
+
+    private RateLimitResult execute(@SuppressWarnings("rawtypes") DefaultRedisScript<List> script,
+                                    String userId, int maxRequests, int windowSeconds) {
         long now = System.currentTimeMillis();
 
         @SuppressWarnings("unchecked")
-        List<Long> result = redisTemplate.execute(
-            slidingWindowScript,
-            Arrays.asList(keyPrefix),
+        List<Long> result = redisShards.template(userId).execute(
+            script,
+            Arrays.asList(redisKeys.sliding(userId)),
+            args(maxRequests, windowSeconds, now)
+        );
+
+        return toResult(result, maxRequests, windowSeconds);
+    }
+
+    private Object[] args(int maxRequests, int windowSeconds, long now) {
+        return new Object[] {
             String.valueOf(maxRequests),
             String.valueOf(windowSeconds),
-            String.valueOf(now)
-        );
+            String.valueOf(now),
+            migrateLegacy ? "1" : "0"
+        };
+    }
 
-        if(result == null){
+    private RateLimitResult toResult(List<Long> result, int maxRequests, int windowSeconds) {
+        if(result == null || result.isEmpty()){
             return new RateLimitResult(false, windowSeconds, maxRequests, windowSeconds);
         }
 
@@ -76,108 +139,202 @@ public class SlidingWindowService {
         return new RateLimitResult(isAllowed, maxRequests, remaining, resetTime);
     }
 
-    public RateLimitResult getStatus(String userId){
-        return getStatus(userId, config.getMaxRequests(), config.getWindowSizeSeconds());
-    }
-    public RateLimitResult getStatus(String userId, int maxRequests, int windowSeconds){
-        String currentKey = "sliding:"+userId+":current";
-        String previousKey = "sliding:" + userId + ":previous";
-        String timestampKey = "sliding:" + userId + ":timestamp";
-
-        long now = System.currentTimeMillis();
-        long windowSizems = windowSeconds*1000L;
-
-        String currentCountStr = redisTemplate.opsForValue().get(currentKey);
-        String previousCountStr = redisTemplate.opsForValue().get(previousKey);
-        String windowStartStr = redisTemplate.opsForValue().get(timestampKey);
 
-        int currentCount = currentCountStr != null ? Integer.parseInt(currentCountStr) : 0;
-        int previousCount = previousCountStr != null ? Integer.parseInt(previousCountStr) : 0;
-        long windowStart = windowStartStr != null ? Long.parseLong(windowStartStr) : now;
+    /**
+     * Check many users in one script invocation (see BatchedCheckExecutor).
+     * Results are returned in the order of the checks.
+     */
+    public List<RateLimitResult> checkRateLimitBatch(List<Check> checks) {
+        List<String> routes = new ArrayList<>(checks.size());
+        List<String> keys = new ArrayList<>(checks.size());
+        String[] args = new String[2 + checks.size() * 2];
+        args[0] = String.valueOf(System.currentTimeMillis());
+        args[1] = migrateLegacy ? "1" : "0";
+
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            routes.add(check.userId());
+            keys.add(redisKeys.sliding(check.userId()));
+            args[2 + i * 2] = String.valueOf(check.maxRequests());
+            args[3 + i * 2] = String.valueOf(check.windowSeconds());
+        }
 
-        long elapsed = now - windowStart;
-        double weight = Math.max(0,(windowSizems-elapsed)) / (double)windowSizems;
-        int weightedCount = (int) Math.floor(previousCount*weight + currentCount);
+        @SuppressWarnings("unchecked")
+        List<Long> flat = SlotBatches.eval(redisShards, redisKeys, slidingWindowBatchScript, routes, keys, args, 2, 3);
+
+        List<RateLimitResult> results = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            if (flat == null) {
+                results.add(new RateLimitResult(false, check.windowSeconds(), check.maxRequests(), check.windowSeconds()));
+                continue;
+            }
+            boolean isAllowed = flat.get(i * 3) == 1;
+            int currentCount = flat.get(i * 3 + 1).intValue();
+            int remaining = Math.max(0, check.maxRequests() - currentCount);
+            results.add(new RateLimitResult(isAllowed, check.maxRequests(), remaining, flat.get(i * 3 + 2)));
+        }
+        return results;
+    }
 
-        int remaining = Math.max(0,(maxRequests-weightedCount));
-        long resetTime = windowSizems - elapsed;
+    public record Check(String userId, int maxRequests, int windowSeconds) {}
 
-        boolean allowed = weightedCount < maxRequests;
+    /**
+     * Add fallback admissions to the users' current windows (see
+     * FallbackReconciler), one pipeline per shard. Admissions older than a window
+     * are skipped. Returns the number of keys updated.
+     */
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        long now = System.currentTimeMillis();
+        List<FallbackLedger.Delta> current = deltas.stream()
+                .filter(delta -> now - delta.lastAt() < delta.windowSeconds() * 1000L)
+                .toList();
+        if (current.isEmpty()) {
+            return 0;
+        }
 
-        return new RateLimitResult(allowed, maxRequests, remaining, resetTime);
+        redisShards.groupByShard(current, FallbackLedger.Delta::key).forEach((shard, onShard) ->
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (FallbackLedger.Delta delta : onShard) {
+                        conn.eval(RECONCILE_SCRIPT, ReturnType.INTEGER, 1, redisKeys.sliding(delta.key()),
+                                String.valueOf(delta.count()), String.valueOf(delta.windowSeconds() * 1000L), String.valueOf(now));
+                    }
+                    return null;
+                }));
+        return current.size();
     }
 
 
     private String getLuaScript() {
-        return """
-            local key_prefix = KEYS[1]
-            local max_requests = tonumber(ARGV[1])
-            local window_size_seconds = tonumber(ARGV[2])
-            local now = tonumber(ARGV[3])
-
-            local window_size_ms = window_size_seconds * 1000
-
-            -- Keys for current window, previous window, and window start timestamp
-            local current_key = key_prefix .. ":current"
-            local previous_key = key_prefix .. ":previous"
-            local timestamp_key = key_prefix .. ":timestamp"
+        return CHECK_FUNCTION + """
+            return check(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), true, ARGV[4] == '1')
+            """;
+    }
 
-            -- Get current window start time
-            local window_start = redis.call('GET', timestamp_key)
+    private String getStatusLuaScript() {
+        return CHECK_FUNCTION + """
+            return check(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), false, ARGV[4] == '1')
+            """;
+    }
 
-            if window_start == false then
-                -- First request ever - initialize
-                window_start = now
-                redis.call('SET', timestamp_key, now)
-                redis.call('SET', current_key, 0)
-                redis.call('SET', previous_key, 0)
-            else
-                window_start = tonumber(window_start)
+    // KEYS = user keys, ARGV = now, migrate flag, then (max_requests, window_seconds) per key
+    private String getBatchLuaScript() {
+        return CHECK_FUNCTION + """
+            local now = tonumber(ARGV[1])
+            local migrate = ARGV[2] == '1'
+            local out = {}
+            for i = 1, #KEYS do
+                local r = check(KEYS[i], tonumber(ARGV[i * 2 + 1]), tonumber(ARGV[i * 2 + 2]), now, true, migrate)
+                out[#out + 1] = r[1]
+                out[#out + 1] = r[2]
+                out[#out + 1] = r[3]
             end
+            return out
+            """;
+    }
 
-            -- Check if we need to slide the window
-            local elapsed = now - window_start
-
-            if elapsed >= window_size_ms then
-                -- Window has passed - slide
-                local current_count = redis.call('GET', current_key) or 0
-                current_count = tonumber(current_count)
-
-                -- Move current to previous
-                redis.call('SET', previous_key, current_count)
-                redis.call('SET', current_key, 0)
-                redis.call('SET', timestamp_key, now)
-
-                window_start = now
-                elapsed = 0
+    /*
+     * State is one hash per user: c = current window count, p = previous
+     * window count, t = current window start (ms). Writes are one HSET plus
+     * one PEXPIRE, and only when something changed.
+     *
+     * With migrate set, a user without a hash is seeded from the old
+     * three-key layout (key:current, key:previous, key:timestamp), which is
+     * deleted on the first write.
+     */
+    private static final String CHECK_FUNCTION = """
+            local function check(key, max_requests, window_size_seconds, now, consume, migrate)
+                local window_size_ms = window_size_seconds * 1000
+
+                local state = redis.call('HMGET', key, 'c', 'p', 't')
+                local current_count = tonumber(state[1]) or 0
+                local previous_count = tonumber(state[2]) or 0
+                local window_start = tonumber(state[3])
+                local dirty = false
+                local legacy = nil
+
+                if window_start == nil and migrate then
+                    legacy = {key .. ':current', key .. ':previous', key .. ':timestamp'}
+                    local old = redis.call('MGET', legacy[1], legacy[2], legacy[3])
+                    if old[3] then
+                        current_count = tonumber(old[1]) or 0
+                        previous_count = tonumber(old[2]) or 0
+                        window_start = tonumber(old[3])
+                        dirty = true
+                    else
+                        legacy = nil
+                    end
+                end
+
+                if window_start == nil then
+                    -- First request ever
+                    window_start = now
+                    dirty = true
+                end
+
+                -- Slide the window once it has passed
+                local elapsed = now - window_start
+                if elapsed >= window_size_ms then
+                    previous_count = current_count
+                    current_count = 0
+                    window_start = now
+                    elapsed = 0
+                    dirty = true
+                end
+
+                -- Weight = portion of previous window still in our sliding window
+                local weight = math.max(0, (window_size_ms - elapsed)) / window_size_ms
+                local weighted_count = math.floor(previous_count * weight + current_count)
+
+                local allowed = 0
+                local reset_time = window_size_ms - elapsed
+
+                if weighted_count < max_requests then
+                    allowed = 1
+                    if consume then
+                        current_count = current_count + 1
+                        weighted_count = weighted_count + 1
+                        dirty = true
+                    end
+                end
+
+                if consume and dirty then
+                    redis.call('HSET', key, 'c', current_count, 'p', previous_count, 't', window_start)
+                    -- 2x window so the previous window is still there to weigh
+                    redis.call('PEXPIRE', key, window_size_ms * 2)
+                    if legacy then
+                        redis.call('DEL', legacy[1], legacy[2], legacy[3])
+                    end
+                end
+
+                return {allowed, weighted_count, reset_time}
             end
+            """;
 
-            -- Get counts
-            local current_count = tonumber(redis.call('GET', current_key) or 0)
-            local previous_count = tonumber(redis.call('GET', previous_key) or 0)
-
-            -- Calculate weighted count using sliding window
-            -- Weight = portion of previous window still in our sliding window
-            local weight = math.max(0, (window_size_ms - elapsed)) / window_size_ms
-            local weighted_count = math.floor(previous_count * weight + current_count)
+    // Same hash layout and window slide as CHECK_FUNCTION, unconditionally adds to c
+    private static final String RECONCILE_SCRIPT = """
+            local key = KEYS[1]
+            local delta = tonumber(ARGV[1])
+            local window_size_ms = tonumber(ARGV[2])
+            local now = tonumber(ARGV[3])
 
-            local allowed = 0
-            local reset_time = window_size_ms - elapsed
+            local state = redis.call('HMGET', key, 'c', 'p', 't')
+            local current_count = tonumber(state[1]) or 0
+            local previous_count = tonumber(state[2]) or 0
+            local window_start = tonumber(state[3])
 
-            if weighted_count < max_requests then
-                -- Increment current window count
-                redis.call('INCR', current_key)
-                allowed = 1
-                weighted_count = weighted_count + 1
+            if window_start == nil then
+                window_start = now
+            elseif now - window_start >= window_size_ms then
+                previous_count = current_count
+                current_count = 0
+                window_start = now
             end
 
-            -- Set TTL on all keys (2x window size for safety)
-            local ttl = window_size_seconds * 2
-            redis.call('EXPIRE', current_key, ttl)
-            redis.call('EXPIRE', previous_key, ttl)
-            redis.call('EXPIRE', timestamp_key, ttl)
-
-            return {allowed, weighted_count, reset_time}
+            current_count = current_count + delta
+            redis.call('HSET', key, 'c', current_count, 'p', previous_count, 't', window_start)
+            redis.call('PEXPIRE', key, window_size_ms * 2)
+            return current_count
             """;
-    }
 }
@@ -0,0 +1,160 @@
+package com.ratelimitx.core.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+
+
+/**
+ * Runs a batch script so that each invocation only touches one shard and
+ * one cluster slot.
+ *
+ * The batch scripts share a layout: KEYS = one per item, ARGV = a few
+ * shared arguments followed by the same number of arguments per key, reply =
+ * the same number of integers per key. Items are first split by shard (by
+ * their routing key, the user id), one shard after the other; in cluster
+ * mode the keys are then split by slot, one invocation per slot is sent in
+ * a single pipeline. Replies are put back in the order of the keys.
+ *
+ * Pipelined invocations go by EVALSHA; only those a node answers with
+ * NOSCRIPT are sent again with the full script (EVAL also caches it), so
+ * a batch never re-runs an invocation that was applied.
+ */
+final class SlotBatches {
+
+    private SlotBatches() {
+    }
+
+    @SuppressWarnings("rawtypes")
+    static List<Long> eval(RedisShards redisShards, RedisKeys redisKeys, RedisScript<List> script,
+                           List<String> routes, List<String> keys, String[] args,
+                           int sharedArgs, int resultsPerKey) {
+        Map<RedisShards.Shard, List<Integer>> byShard = redisShards.groupByShard(
+                IntStream.range(0, keys.size()).boxed().toList(), routes::get);
+        if (byShard.size() <= 1) {
+            return eval(redisShards.shardFor(routes.get(0)).template(), redisKeys, script,
+                    keys, args, sharedArgs, resultsPerKey);
+        }
+
+        int argsPerKey = (args.length - sharedArgs) / keys.size();
+        Long[] flat = new Long[keys.size() * resultsPerKey];
+        byShard.forEach((shard, indexes) -> {
+            List<String> shardKeys = new ArrayList<>(indexes.size());
+            String[] shardArgs = new String[sharedArgs + indexes.size() * argsPerKey];
+            System.arraycopy(args, 0, shardArgs, 0, sharedArgs);
+            for (int i = 0; i < indexes.size(); i++) {
+                shardKeys.add(keys.get(indexes.get(i)));
+                System.arraycopy(args, sharedArgs + indexes.get(i) * argsPerKey,
+                        shardArgs, sharedArgs + i * argsPerKey, argsPerKey);
+            }
+
+            List<Long> reply = eval(shard.template(), redisKeys, script,
+                    shardKeys, shardArgs, sharedArgs, resultsPerKey);
+            for (int i = 0; i < indexes.size(); i++) {
+                for (int r = 0; r < resultsPerKey; r++) {
+                    flat[indexes.get(i) * resultsPerKey + r] = reply.get(i * resultsPerKey + r);
+                }
+            }
+        });
+        return Arrays.asList(flat);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static List<Long> eval(StringRedisTemplate template, RedisKeys redisKeys, RedisScript<List> script,
+                                   List<String> keys, String[] args, int sharedArgs, int resultsPerKey) {
+        List<List<Integer>> groups = redisKeys.slotGroups(keys);
+        if (groups.size() <= 1) {
+            return template.execute(script, keys, (Object[]) args);
+        }
+
+        int argsPerKey = (args.length - sharedArgs) / keys.size();
+        List<String[]> calls = new ArrayList<>(groups.size());
+        for (List<Integer> group : groups) {
+            String[] keysAndArgs = new String[group.size() * (1 + argsPerKey) + sharedArgs];
+            int n = 0;
+            for (int index : group) {
+                keysAndArgs[n++] = keys.get(index);
+            }
+            System.arraycopy(args, 0, keysAndArgs, n, sharedArgs);
+            n += sharedArgs;
+            for (int index : group) {
+                System.arraycopy(args, sharedArgs + index * argsPerKey, keysAndArgs, n, argsPerKey);
+                n += argsPerKey;
+            }
+            calls.add(keysAndArgs);
+        }
+
+        List<Object> replies;
+        try {
+            replies = pipeline(template, script, calls, groups, true);
+        } catch (RedisPipelineException e) {
+            replies = new ArrayList<>(e.getPipelineResult());
+            List<Integer> missing = new ArrayList<>();
+            for (int g = 0; g < replies.size(); g++) {
+                if (replies.get(g) instanceof Throwable error) {
+                    if (!isNoScript(error)) {
+                        throw e;
+                    }
+                    missing.add(g);
+                }
+            }
+            if (missing.isEmpty() || replies.size() != groups.size()) {
+                throw e;
+            }
+            List<Object> retried = pipeline(template, script,
+                    missing.stream().map(calls::get).toList(),
+                    missing.stream().map(groups::get).toList(), false);
+            for (int i = 0; i < missing.size(); i++) {
+                replies.set(missing.get(i), retried.get(i));
+            }
+        }
+
+        Long[] flat = new Long[keys.size() * resultsPerKey];
+        for (int g = 0; g < groups.size(); g++) {
+            List<Long> reply = (List<Long>) replies.get(g);
+            List<Integer> group = groups.get(g);
+            for (int i = 0; i < group.size(); i++) {
+                for (int r = 0; r < resultsPerKey; r++) {
+                    flat[group.get(i) * resultsPerKey + r] = reply.get(i * resultsPerKey + r);
+                }
+            }
+        }
+        return Arrays.asList(flat);
+    }
+
+    private static List<Object> pipeline(StringRedisTemplate template, RedisScript<?> script,
+                                         List<String[]> calls, List<List<Integer>> groups, boolean bySha) {
+        return template.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int g = 0; g < calls.size(); g++) {
+                if (bySha) {
+                    conn.evalSha(script.getSha1(), ReturnType.MULTI, groups.get(g).size(), calls.get(g));
+                } else {
+                    conn.eval(script.getScriptAsString(), ReturnType.MULTI, groups.get(g).size(), calls.get(g));
+                }
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,16 +1,22 @@
 package com.ratelimitx.core.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
 import com.ratelimitx.core.model.RateLimitResult;
 
 import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
 
 
 
@@ -33,11 +39,17 @@ import jakarta.annotation.PostConstruct;
 public class TokenBucketService {
 
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
 
     @SuppressWarnings("rawtypes")
     private DefaultRedisScript<List> tokenBucketScript;
 
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> tokenBucketBatchScript;
+
 
     private static final int DEFAULT_CAPACITY = 10;
     private static final double DEFAULT_REFILL_RATE = 1.0;
@@ -47,27 +59,58 @@ public class TokenBucketService {
         tokenBucketScript = new DefaultRedisScript<>();
         tokenBucketScript.setScriptText(getLuaScript());
         tokenBucketScript.setResultType(List.class);
+
+        tokenBucketBatchScript = new DefaultRedisScript<>();
+        tokenBucketBatchScript.setScriptText(getBatchLuaScript());
+        tokenBucketBatchScript.setResultType(List.class);
     }
 
     public RateLimitResult tryConsume(String userId){
         return tryConsume(userId,1,DEFAULT_CAPACITY,DEFAULT_REFILL_RATE);
     }
+
+    /**
+     * Consume one token from a bucket with the given (per-tier) parameters.
+     */
+    public RateLimitResult tryConsume(String userId, int capacity, double refillRate){
+        return tryConsume(userId, 1, capacity, refillRate);
+    }
     private RateLimitResult tryConsume(String userId, int tokens, int capacity, double refillRate) {
 
-        String key = "bucket:"+userId;
+        String key = redisKeys.bucket(userId);
         long now = System.currentTimeMillis();
 
         @SuppressWarnings("unchecked")
-        List<Long> result = redisTemplate.execute(
+        List<Long> result = redisShards.template(userId).execute(
             tokenBucketScript,
             Arrays.asList(key),
+            args(tokens, capacity, refillRate, now)
+        );
+
+        return toResult(result, capacity);
+    }
+
+    /**
+     * Non-blocking variant of tryConsume, same script and result.
+     */
+    public Mono<RateLimitResult> tryConsumeReactive(String userId, int capacity, double refillRate) {
+        return ReactiveScripts.eval(redisShards.reactiveTemplate(userId), tokenBucketScript,
+                        Arrays.asList(redisKeys.bucket(userId)),
+                        args(1, capacity, refillRate, System.currentTimeMillis()))
+                .map(result -> toResult(result, capacity));
+    }
+
+    private Object[] args(int tokens, int capacity, double refillRate, long now) {
+        return new Object[] {
             String.valueOf(capacity),
             String.valueOf(refillRate),
             String.valueOf(now),
             String.valueOf(tokens)
-        );
+        };
+    }
 
-        if(result == null){
+    private RateLimitResult toResult(List<Long> result, int capacity) {
+        if(result == null || result.isEmpty()){
             return new RateLimitResult(true, capacity, capacity,0);
         }
 
@@ -82,47 +125,144 @@ public class TokenBucketService {
         return tryConsume(userId, 0, DEFAULT_CAPACITY, DEFAULT_REFILL_RATE);
     }
 
+    /**
+     * Consume from many buckets in one script invocation (see BatchedCheckExecutor).
+     * Results are returned in the order of the checks.
+     */
+    public List<RateLimitResult> tryConsumeBatch(List<Check> checks) {
+        List<String> routes = new ArrayList<>(checks.size());
+        List<String> keys = new ArrayList<>(checks.size());
+        String[] args = new String[1 + checks.size() * 3];
+        args[0] = String.valueOf(System.currentTimeMillis());
+
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            routes.add(check.userId());
+            keys.add(redisKeys.bucket(check.userId()));
+            args[1 + i * 3] = String.valueOf(check.capacity());
+            args[2 + i * 3] = String.valueOf(check.refillRate());
+            args[3 + i * 3] = String.valueOf(check.tokens());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Long> flat = SlotBatches.eval(redisShards, redisKeys, tokenBucketBatchScript, routes, keys, args, 1, 3);
+
+        List<RateLimitResult> results = new ArrayList<>(checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            Check check = checks.get(i);
+            if (flat == null) {
+                results.add(new RateLimitResult(true, check.capacity(), check.capacity(), 0));
+                continue;
+            }
+            boolean allowed = flat.get(i * 3) == 1;
+            int remaining = flat.get(i * 3 + 1).intValue();
+            results.add(new RateLimitResult(allowed, check.capacity(), remaining, flat.get(i * 3 + 2)));
+        }
+        return results;
+    }
+
+    public record Check(String userId, int tokens, int capacity, double refillRate) {}
+
+    /**
+     * Take tokens spent by the local fallback out of the buckets (see
+     * FallbackReconciler), one pipeline per shard. Unlike tryConsume this always
+     * applies, emptying the bucket at worst.
+     */
+    public void reconcile(List<Check> checks) {
+        String now = String.valueOf(System.currentTimeMillis());
+        redisShards.groupByShard(checks, Check::userId).forEach((shard, onShard) ->
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Check check : onShard) {
+                        conn.eval(RECONCILE_SCRIPT, ReturnType.INTEGER, 1, redisKeys.bucket(check.userId()),
+                                String.valueOf(check.capacity()), String.valueOf(check.refillRate()), now,
+                                String.valueOf(check.tokens()));
+                    }
+                    return null;
+                }));
+    }
+
     private String getLuaScript() {
+        return CONSUME_FUNCTION + """
+            return consume(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4]))
+            """;
+    }
+
+    // KEYS = bucket keys, ARGV = now, then (capacity, refill_rate, requested) per key
+    private String getBatchLuaScript() {
+        return CONSUME_FUNCTION + """
+            local now = tonumber(ARGV[1])
+            local out = {}
+            for i = 1, #KEYS do
+                local base = (i - 1) * 3 + 1
+                local r = consume(KEYS[i], tonumber(ARGV[base + 1]), tonumber(ARGV[base + 2]), now, tonumber(ARGV[base + 3]))
+                out[#out + 1] = r[1]
+                out[#out + 1] = r[2]
+                out[#out + 1] = r[3]
+            end
+            return out
+            """;
+    }
 
-        return """
+    private static final String CONSUME_FUNCTION = """
+            local function consume(key, capacity, refill_rate, now, requested)
+                -- Get current bucket state
+                local bucket = redis.call('HMGET', key, 'tokens', 'last_refill')
+                local tokens = tonumber(bucket[1])
+                local last_refill = tonumber(bucket[2])
+
+                -- Initialize bucket if new
+                if tokens == nil then
+                    tokens = capacity
+                    last_refill = now
+                end
+
+                -- Calculate tokens to add based on time elapsed
+                local elapsed = (now - last_refill) / 1000.0
+                tokens = math.min(capacity, tokens + (elapsed * refill_rate))
+
+                local allowed = 0
+                local retry_after = 0
+
+                -- Check if we have enough tokens
+                if tokens >= requested then
+                    tokens = tokens - requested
+                    allowed = 1
+                else
+                    -- Calculate wait time for enough tokens
+                    retry_after = math.ceil((requested - tokens) / refill_rate * 1000)
+                end
+
+                -- Save bucket state
+                redis.call('HMSET', key, 'tokens', tokens, 'last_refill', now)
+                redis.call('EXPIRE', key, math.ceil(capacity / refill_rate) * 2)
+
+                return {allowed, math.floor(tokens), retry_after}
+            end
+            """;
+
+    // Refill like CONSUME_FUNCTION, then subtract without the admission check
+    private static final String RECONCILE_SCRIPT = """
             local key = KEYS[1]
             local capacity = tonumber(ARGV[1])
             local refill_rate = tonumber(ARGV[2])
             local now = tonumber(ARGV[3])
-            local requested = tonumber(ARGV[4])
+            local consumed = tonumber(ARGV[4])
 
-            -- Get current bucket state
             local bucket = redis.call('HMGET', key, 'tokens', 'last_refill')
             local tokens = tonumber(bucket[1])
             local last_refill = tonumber(bucket[2])
-
-            -- Initialize bucket if new
             if tokens == nil then
                 tokens = capacity
                 last_refill = now
             end
 
-            -- Calculate tokens to add based on time elapsed
             local elapsed = (now - last_refill) / 1000.0
             tokens = math.min(capacity, tokens + (elapsed * refill_rate))
+            tokens = math.max(0, tokens - consumed)
 
-            local allowed = 0
-            local retry_after = 0
-
-            -- Check if we have enough tokens
-            if tokens >= requested then
-                tokens = tokens - requested
-                allowed = 1
-            else
-                -- Calculate wait time for enough tokens
-                retry_after = math.ceil((requested - tokens) / refill_rate * 1000)
-            end
-
-            -- Save bucket state
             redis.call('HMSET', key, 'tokens', tokens, 'last_refill', now)
             redis.call('EXPIRE', key, math.ceil(capacity / refill_rate) * 2)
-
-            return {allowed, math.floor(tokens), retry_after}
+            return math.floor(tokens)
             """;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,354 @@
+package com.ratelimitx.core.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ratelimitx.core.circuitbreaker.FallbackLedger;
+import com.ratelimitx.core.config.RateLimitConfig;
+import com.ratelimitx.core.config.RedisKeys;
+import com.ratelimitx.core.config.RedisShards;
+import com.ratelimitx.core.model.RateLimitResult;
+
+import jakarta.annotation.PostConstruct;
+
+
+
+
+/**
+ * Token lease rate limiting.
+ *
+ * The shared quota is a fixed window counter in Redis ("lease:{user}:{window}").
+ * Instead of one round trip per request, a node atomically reserves a chunk
+ * of the user's remaining quota and spends it from an in-process counter.
+ * Unused permits are handed back when the lease expires.
+ *
+ * Chunk size follows each user's observed request rate (enough for one
+ * lease duration), capped at leaseMaxChunkFraction of the limit, so low
+ * tiers still go to Redis on every request and heavy users save roughly a
+ * chunk's worth of round trips.
+ *
+ * Reservations never exceed the window's limit, so the cluster cannot
+ * over-admit within a window. The cost is under-admission: permits parked
+ * on other nodes (at most nodes x max chunk) and permits still leased when
+ * a window closes ("lapsed"), both exported by getStats().
+ */
+@Service
+public class TokenLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenLeaseService.class);
+
+    @Autowired
+    private RedisShards redisShards;
+
+    @Autowired
+    private RedisKeys redisKeys;
+
+    @Autowired
+    @org.springframework.beans.factory.annotation.Qualifier("rateLimitConfig")
+    private RateLimitConfig config;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> reserveScript;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final AtomicLong leasesAcquired = new AtomicLong();
+    private final AtomicLong permitsLeased = new AtomicLong();
+    private final AtomicLong permitsServedLocally = new AtomicLong();
+    private final AtomicLong permitsReturned = new AtomicLong();
+    private final AtomicLong permitsLapsed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        reserveScript = new DefaultRedisScript<>();
+        reserveScript.setScriptText(getReserveScript());
+        reserveScript.setResultType(List.class);
+    }
+
+    public RateLimitResult tryAcquire(String userId) {
+        return tryAcquire(userId, config.getMaxRequests());
+    }
+
+    public RateLimitResult tryAcquire(String userId, int limit) {
+        long now = System.currentTimeMillis();
+        long windowMs = config.getWindowSizeSeconds() * 1000L;
+        long windowId = now / windowMs;
+        long resetMs = (windowId + 1) * windowMs - now;
+
+        Lease lease = leases.computeIfAbsent(userId, k -> new Lease());
+        lease.lastUsed = now;
+
+        // Fast path: spend a permit already held by this node
+        if (lease.isCurrent(windowId, now) && lease.tryTake()) {
+            permitsServedLocally.incrementAndGet();
+            return allowed(lease, limit, resetMs);
+        }
+
+        // ReentrantLock rather than synchronized: we block on Redis while holding it
+        lease.lock.lock();
+        try {
+            if (lease.isCurrent(windowId, now)) {
+                if (lease.tryTake()) {
+                    permitsServedLocally.incrementAndGet();
+                    return allowed(lease, limit, resetMs);
+                }
+                if (lease.granted == 0) {
+                    // Redis said the window is used up; don't ask again until the lease expires
+                    return new RateLimitResult(false, limit, 0, resetMs);
+                }
+            }
+
+            renew(userId, lease, limit, windowId, now, resetMs);
+
+            if (lease.tryTake()) {
+                return allowed(lease, limit, resetMs);
+            }
+            return new RateLimitResult(false, limit, 0, resetMs);
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    /**
+     * Hand back permits of expired leases and forget idle users.
+     */
+    @Scheduled(fixedDelayString = "${ratelimit.lease-duration-ms:1000}")
+    public void expireLeases() {
+        long now = System.currentTimeMillis();
+        long windowMs = config.getWindowSizeSeconds() * 1000L;
+        long windowId = now / windowMs;
+
+        Map<String, Integer> returns = new HashMap<>();
+
+        Iterator<Map.Entry<String, Lease>> it = leases.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Lease> entry = it.next();
+            Lease lease = entry.getValue();
+
+            if (now < lease.expiresAt || !lease.lock.tryLock()) {
+                continue;
+            }
+            try {
+                int leftover = lease.permits.getAndSet(0);
+                if (leftover > 0) {
+                    if (lease.windowId == windowId) {
+                        returns.put(entry.getKey(), leftover);
+                    } else {
+                        permitsLapsed.addAndGet(leftover);
+                    }
+                }
+                if (now - lease.lastUsed > windowMs) {
+                    it.remove();
+                }
+            } finally {
+                lease.lock.unlock();
+            }
+        }
+
+        if (!returns.isEmpty()) {
+            returnPermits(returns, windowId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long outstanding = 0;
+        for (Lease lease : leases.values()) {
+            outstanding += lease.permits.get();
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeLeases", leases.size());
+        stats.put("leasesAcquired", leasesAcquired.get());
+        stats.put("permitsLeased", permitsLeased.get());
+        stats.put("permitsServedLocally", permitsServedLocally.get());
+        stats.put("permitsReturned", permitsReturned.get());
+        stats.put("permitsLapsed", permitsLapsed.get());
+        stats.put("permitsOutstanding", outstanding);
+        stats.put("leaseDurationMs", config.getLeaseDurationMs());
+        return stats;
+    }
+
+    private void renew(String userId, Lease lease, int limit, long windowId, long now, long resetMs) {
+        int leftover = lease.permits.getAndSet(0);
+        if (leftover > 0) {
+            if (lease.windowId == windowId) {
+                returnPermits(Map.of(userId, leftover), windowId);
+            } else {
+                permitsLapsed.addAndGet(leftover);
+            }
+        }
+
+        // Observed demand of the previous lease drives the next chunk size
+        if (lease.acquiredAt > 0 && lease.granted > 0) {
+            long elapsed = Math.max(1, now - lease.acquiredAt);
+            double observed = (lease.granted - leftover) * 1000.0 / elapsed;
+            lease.ratePerSecond = lease.ratePerSecond == 0
+                    ? observed
+                    : 0.5 * lease.ratePerSecond + 0.5 * observed;
+        }
+        int chunk = chunkSize(lease.ratePerSecond, limit);
+
+        @SuppressWarnings("unchecked")
+        List<Long> result = redisShards.template(userId).execute(
+            reserveScript,
+            Arrays.asList(leaseKey(userId, windowId)),
+            String.valueOf(limit),
+            String.valueOf(chunk),
+            String.valueOf(resetMs)
+        );
+
+        int granted = result != null ? result.get(0).intValue() : 0;
+        int globalRemaining = result != null ? result.get(1).intValue() : 0;
+
+        lease.windowId = windowId;
+        lease.granted = granted;
+        lease.globalRemaining = Math.max(0, globalRemaining);
+        lease.acquiredAt = now;
+        lease.expiresAt = Math.min(now + config.getLeaseDurationMs(), now + resetMs);
+        lease.permits.set(granted);
+
+        leasesAcquired.incrementAndGet();
+        permitsLeased.addAndGet(granted);
+    }
+
+    private int chunkSize(double ratePerSecond, int limit) {
+        int maxChunk = Math.max(1, (int) (limit * config.getLeaseMaxChunkFraction()));
+        int wanted = (int) Math.ceil(ratePerSecond * config.getLeaseDurationMs() / 1000.0);
+        return Math.max(1, Math.min(maxChunk, wanted));
+    }
+
+    // userId -> leftover permits of the current window, one pipeline per shard
+    private void returnPermits(Map<String, Integer> returns, long windowId) {
+        redisShards.groupByShard(List.copyOf(returns.entrySet()), Map.Entry::getKey).forEach((shard, entries) -> {
+            try {
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Map.Entry<String, Integer> entry : entries) {
+                        conn.eval(RETURN_SCRIPT, ReturnType.INTEGER, 1,
+                                leaseKey(entry.getKey(), windowId), String.valueOf(entry.getValue()));
+                    }
+                    return null;
+                });
+                entries.forEach(entry -> permitsReturned.addAndGet(entry.getValue()));
+            } catch (Exception e) {
+                // Permits stay consumed in Redis until the window ends (safe direction)
+                entries.forEach(entry -> permitsLapsed.addAndGet(entry.getValue()));
+                logger.warn("Could not return {} leases to {}: {}", entries.size(), shard.name(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Add fallback admissions to the current shared window (see
+     * FallbackReconciler), one pipeline per shard. Returns the number of keys updated.
+     */
+    public int reconcile(List<FallbackLedger.Delta> deltas) {
+        long now = System.currentTimeMillis();
+        long windowMs = config.getWindowSizeSeconds() * 1000L;
+        long windowId = now / windowMs;
+        List<FallbackLedger.Delta> current = deltas.stream()
+                .filter(delta -> delta.lastAt() >= windowId * windowMs)
+                .toList();
+        if (current.isEmpty()) {
+            return 0;
+        }
+
+        redisShards.groupByShard(current, FallbackLedger.Delta::key).forEach((shard, onShard) ->
+                shard.template().executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (FallbackLedger.Delta delta : onShard) {
+                        conn.eval(RateLimiterService.RECONCILE_COUNTER_SCRIPT, ReturnType.INTEGER, 1,
+                                leaseKey(delta.key(), windowId), String.valueOf(delta.count()),
+                                String.valueOf((windowId + 1) * windowMs - now));
+                    }
+                    return null;
+                }));
+        return current.size();
+    }
+
+    private RateLimitResult allowed(Lease lease, int limit, long resetMs) {
+        int remaining = lease.globalRemaining + lease.permits.get();
+        return new RateLimitResult(true, limit, Math.min(limit, remaining), resetMs);
+    }
+
+    private String leaseKey(String userId, long windowId) {
+        return redisKeys.lease(userId, windowId);
+    }
+
+    private static final class Lease {
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicInteger permits = new AtomicInteger();
+        volatile long windowId = -1;
+        volatile long expiresAt;
+        volatile long acquiredAt;
+        volatile long lastUsed;
+        volatile int granted;
+        volatile int globalRemaining;
+        volatile double ratePerSecond;
+
+        boolean isCurrent(long currentWindow, long now) {
+            return windowId == currentWindow && now < expiresAt;
+        }
+
+        boolean tryTake() {
+            while (true) {
+                int current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (permits.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private String getReserveScript() {
+        return """
+            local key = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local requested = tonumber(ARGV[2])
+            local window_ttl_ms = tonumber(ARGV[3])
+
+            local used = tonumber(redis.call('GET', key) or '0')
+            local granted = 0
+
+            if used < limit then
+                granted = math.min(requested, limit - used)
+                used = redis.call('INCRBY', key, granted)
+                if redis.call('PTTL', key) < 0 then
+                    redis.call('PEXPIRE', key, window_ttl_ms)
+                end
+            end
+
+            return {granted, limit - used}
+            """;
+    }
+
+    // Give back unused permits, never below zero and never recreating an expired window
+    private static final String RETURN_SCRIPT = """
+            local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+            local n = math.min(tonumber(ARGV[1]), used)
+            if n > 0 then
+                redis.call('DECRBY', KEYS[1], n)
+            end
+            return n
+            """;
+}
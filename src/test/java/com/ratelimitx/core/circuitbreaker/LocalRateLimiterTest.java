@@ -0,0 +1,192 @@
+package com.ratelimitx.core.circuitbreaker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+
+class LocalRateLimiterTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(START);
+    private LocalRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        clock.set(START);
+        limiter = new LocalRateLimiter(clock::get);
+    }
+
+    private void advance(long ms) {
+        clock.addAndGet(ms);
+    }
+
+    // ==================== CHECKS ====================
+
+    @Test
+    void fixedWindowAdmitsUpToLimitThenResets() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.isAllowed("alice", 5).isAllowed());
+        }
+        assertFalse(limiter.isAllowed("alice", 5).isAllowed());
+
+        advance(60_000);
+        assertTrue(limiter.isAllowed("alice", 5).isAllowed());
+    }
+
+    @Test
+    void fixedWindowUsesTheGivenWindow() {
+        assertTrue(limiter.isAllowed("alice", 1, 1000).isAllowed());
+        assertFalse(limiter.isAllowed("alice", 1, 1000).isAllowed());
+
+        advance(1000);
+        assertTrue(limiter.isAllowed("alice", 1, 1000).isAllowed());
+    }
+
+    @Test
+    void concurrentChecksNeverOverAdmit() throws Exception {
+        int threads = 8;
+        int attemptsPerThread = 1000;
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (limiter.isAllowed("shared", 100).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                        if (limiter.isAllowedGcra("shared-gcra", 100, 60_000).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(200, allowed.get());
+    }
+
+    @Test
+    void gcraAllowsBurstThenOnePerEmissionInterval() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.isAllowedGcra("alice", 10, 10_000).isAllowed());
+        }
+        assertFalse(limiter.isAllowedGcra("alice", 10, 10_000).isAllowed());
+
+        advance(1000);
+        assertTrue(limiter.isAllowedGcra("alice", 10, 10_000).isAllowed());
+        assertFalse(limiter.isAllowedGcra("alice", 10, 10_000).isAllowed());
+    }
+
+    @Test
+    void slidingWindowWeighsThePreviousWindow() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.isAllowedSliding("alice", 10, 10).isAllowed());
+        }
+        assertFalse(limiter.isAllowedSliding("alice", 10, 10).isAllowed());
+
+        // Half into the next window the previous 10 still weigh 5
+        long intoWindow = (clock.get() - START) % 10_000;
+        advance(10_000 - intoWindow + 5_000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.isAllowedSliding("alice", 10, 10).isAllowed());
+        }
+        assertFalse(limiter.isAllowedSliding("alice", 10, 10).isAllowed());
+    }
+
+    @Test
+    void overflowStripesKeepTheCallersWindow() {
+        ReflectionTestUtils.setField(limiter, "maxEntries", 1);
+        limiter.isAllowed("alice", 10);
+
+        assertTrue(limiter.isAllowedSliding("bob", 1, 1).isAllowed());
+        assertFalse(limiter.isAllowedSliding("bob", 1, 1).isAllowed());
+        assertEquals(2, limiter.getOverflowChecks());
+
+        advance(1000);
+        assertTrue(limiter.isAllowedSliding("bob", 1, 1).isAllowed());
+    }
+
+    @Test
+    void shareScalesLimitsButKeepsAtLeastOne() {
+        limiter.setShare(0.5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.isAllowed("alice", 10).isAllowed());
+        }
+        assertFalse(limiter.isAllowed("alice", 10).isAllowed());
+
+        limiter.setShare(0.01);
+        assertTrue(limiter.isAllowed("bob", 10).isAllowed());
+        assertFalse(limiter.isAllowed("bob", 10).isAllowed());
+    }
+
+    // ==================== TIMING WHEEL ====================
+
+    @Test
+    void sweepKeepsLiveEntriesAndEvictsExpiredOnes() {
+        limiter.isAllowed("alice", 10);
+
+        for (int second = 1; second <= 59; second++) {
+            advance(1000);
+            limiter.sweep();
+        }
+        assertEquals(1, limiter.getActiveUsers());
+
+        for (int second = 0; second < 3; second++) {
+            advance(1000);
+            limiter.sweep();
+        }
+        assertEquals(0, limiter.getActiveUsers());
+        assertEquals(1, limiter.getEvicted());
+    }
+
+    @Test
+    void laggingSweepStillEvictsEntriesFiledUnderSkippedTicks() {
+        limiter.isAllowed("alice", 10);
+        limiter.isAllowedGcra("bob", 10, 1000);
+        limiter.isAllowedSliding("carol", 10, 1);
+
+        // More than the wheel spans (64 ticks) without a sweep
+        advance(200_000);
+        limiter.sweep();
+
+        assertEquals(0, limiter.getActiveUsers());
+        assertEquals(3, limiter.getEvicted());
+    }
+
+    @Test
+    void evictedUserStartsFresh() {
+        assertTrue(limiter.isAllowed("alice", 1).isAllowed());
+        assertFalse(limiter.isAllowed("alice", 1).isAllowed());
+
+        advance(200_000);
+        limiter.sweep();
+        assertTrue(limiter.isAllowed("alice", 1).isAllowed());
+        assertEquals(1, limiter.getActiveUsers());
+    }
+}
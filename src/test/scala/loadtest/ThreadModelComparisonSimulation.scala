@@ -0,0 +1,69 @@
+package loadtest
+
+import io.gatling.core.Predef._
+import io.gatling.http.Predef._
+import scala.concurrent.duration._
+
+
+/**
+ * Platform vs virtual thread comparison (see run-thread-comparison.sh).
+ *
+ * Holds a fixed number of concurrent authenticated users, each calling
+ * /api/data in a loop. Run it once against the default profile and once
+ * against --spring.profiles.active=virtual, ideally while Redis is being
+ * slowed down, and compare throughput and tail latency.
+ *
+ *   -DbaseUrl=http://localhost:8080  -Dconcurrency=400  -DdurationSec=60  -Dlabel=platform
+ */
+class ThreadModelComparisonSimulation extends Simulation {
+
+  val baseUrl = System.getProperty("baseUrl", "http://localhost:8080")
+  val concurrency = Integer.getInteger("concurrency", 400).intValue
+  val durationSec = Integer.getInteger("durationSec", 60).intValue
+  val label = System.getProperty("label", "run")
+
+  val httpProtocol = http
+    .baseUrl(baseUrl)
+    .acceptHeader("application/json")
+    .contentTypeHeader("application/json")
+    .userAgentHeader(s"Gatling/RateLimitX-ThreadModel-$label")
+
+  // Unique account per virtual user; more than Tomcat's 200 platform workers by default
+  val accountFeeder = Iterator.from(0).map { i =>
+    val name = s"vt-$label-$i-${System.nanoTime() % 100000}"
+    Map("username" -> name, "email" -> s"$name@loadtest.local", "password" -> "loadtest-password")
+  }
+
+  val holdConcurrency = scenario(s"Hold concurrency ($label)")
+    .feed(accountFeeder)
+    .exec(
+      http("Register")
+        .post("/auth/register")
+        .body(StringBody("""{"username":"#{username}","email":"#{email}","password":"#{password}"}"""))
+        .check(status.in(201, 400))
+    )
+    .exec(
+      http("Login")
+        .post("/auth/login")
+        .body(StringBody("""{"username":"#{username}","password":"#{password}"}"""))
+        .check(status.is(200))
+        .check(jsonPath("$.token").saveAs("token"))
+    )
+    .during(durationSec.seconds) {
+      exec(
+        http("Rate Limited API Request")
+          .get("/api/data")
+          .header("Authorization", "Bearer #{token}")
+          .check(status.in(200, 429))
+          .check(header("X-RateLimit-Remaining").exists)
+      )
+    }
+
+  setUp(
+    holdConcurrency.inject(rampUsers(concurrency).during(10.seconds))
+  ).protocols(httpProtocol)
+  .assertions(
+    // Both thread models must keep serving; compare the reports for the rest
+    global.successfulRequests.percent.gte(95)
+  )
+}